@@ -0,0 +1,414 @@
+package launchpad.benchmarks;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+
+// Build check, run in the test phase of this module: AcroFormReader, in ExtractPDFFillableFields and in
+// ExtractOrderedFillableFields, has to take its fast path and list the same fields as the full PDFBox load. The forms
+// are generated in every cross-reference layout it reads: a classic table, an xref stream with a PNG predictor,
+// object streams, a hybrid file with /XRefStm, and incremental updates chained with /Prev (the newest entry of an
+// object wins, also across table and stream sections), plus a form saved by PDFBox. Each has /Rect numbers behind
+// references, an /Annots array behind a reference, a field hierarchy with an inherited /FT, a field with two widgets,
+// and escaped and UTF-16 names. The readers are package-private, so they are reached by reflection.
+public final class AcroFormCheck {
+
+    private static final String[] PACKAGES = {"fields.extract", "launchpad.pdf.extract"};
+
+    private AcroFormCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("classic table", FormFile.single(Layout.TABLE));
+        files.put("xref stream", FormFile.single(Layout.STREAM));
+        files.put("object streams", FormFile.single(Layout.OBJECT_STREAMS));
+        files.put("hybrid /XRefStm", FormFile.single(Layout.HYBRID));
+        files.put("incremental /Prev", FormFile.incremental());
+        files.put("saved by PDFBox", CorpusGenerator.pdfForm(60));
+
+        List<String> problems = new ArrayList<>();
+        for (String pkg : PACKAGES) {
+            Lister lister = new Lister(pkg);
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                String label = pkg + ", " + file.getKey() + ": ";
+                String full = lister.full(file.getValue());
+                String fast;
+                try {
+                    fast = lister.fast(file.getValue());
+                } catch (InvocationTargetException e) {
+                    problems.add(label + "the fast path failed: " + e.getCause());
+                    continue;
+                }
+                if (full.isEmpty()) {
+                    problems.add(label + "the full load lists no fields");
+                } else if (fast == null) {
+                    problems.add(label + "the fast path did not apply");
+                } else if (!fast.equals(full)) {
+                    problems.add(label + "the fast path lists " + fast + ", the full load " + full);
+                } else if (!lister.list(file.getValue()).equals(full)) {
+                    problems.add(label + "AcroFormReader.list differs from the full load");
+                }
+            }
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("AcroFormReader: " + files.size() + " forms listed as by the full load, in "
+                + PACKAGES.length + " functions");
+    }
+
+    // A function's listing, on the partial document and on the full load
+    private static final class Lister {
+        private final Function<PDDocument, String> listing;
+        private final Constructor<?> reader;
+        private final Method read;
+        private final Method list;
+
+        Lister(String pkg) throws ReflectiveOperationException {
+            Object main = Class.forName(pkg + ".Main").getDeclaredConstructor().newInstance();
+            Method listFormFields = main.getClass().getDeclaredMethod("listFormFields", PDDocument.class);
+            listFormFields.setAccessible(true);
+            listing = document -> {
+                try {
+                    return (String) listFormFields.invoke(main, document);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException(e);
+                }
+            };
+            Class<?> readerClass = Class.forName(pkg + ".AcroFormReader");
+            reader = readerClass.getDeclaredConstructor(ByteBuffer.class);
+            reader.setAccessible(true);
+            read = readerClass.getDeclaredMethod("read");
+            read.setAccessible(true);
+            list = readerClass.getDeclaredMethod("list", byte[].class, Function.class);
+            list.setAccessible(true);
+        }
+
+        String full(byte[] pdf) throws Exception {
+            try (PDDocument document = PDDocument.load(pdf)) {
+                return listing.apply(document);
+            }
+        }
+
+        // null when the reader leaves the file to the full load
+        String fast(byte[] pdf) throws Exception {
+            PDDocument partial = (PDDocument) read.invoke(reader.newInstance(ByteBuffer.wrap(pdf)));
+            if (partial == null) {
+                return null;
+            }
+            try (PDDocument document = partial) {
+                return listing.apply(document);
+            }
+        }
+
+        String list(byte[] pdf) throws Exception {
+            return (String) list.invoke(null, pdf, listing);
+        }
+    }
+
+    // How the objects of a section are stored and found
+    private enum Layout {
+        // Objects at the top level, classic xref table
+        TABLE,
+        // Objects at the top level, xref stream
+        STREAM,
+        // Everything but streams in an object stream, xref stream
+        OBJECT_STREAMS,
+        // Page tree at the top level in a classic table, the rest in an object stream found through /XRefStm
+        HYBRID
+    }
+
+    // A generated form: objects by number, and the field objects by name for the updates
+    private static final class Form {
+        final Map<Integer, String> objects = new TreeMap<>();
+        final Map<String, Integer> fields = new LinkedHashMap<>();
+        final List<Integer> pageTree = new ArrayList<>();
+        int size;
+    }
+
+    // Objects 1 catalog, 2 page tree, 3 and 4 pages, 5 content, 6 the second page's /Annots; fields from 10
+    private static Form form() {
+        Form form = new Form();
+        List<List<Integer>> annotations = new ArrayList<>();
+        annotations.add(new ArrayList<>());
+        annotations.add(new ArrayList<>());
+        List<Integer> fields = new ArrayList<>();
+        int next = 10;
+
+        // Twelve fields, two to a row, created in shuffled order so that reading order has to sort them
+        List<Integer> slots = new ArrayList<>();
+        for (int s = 0; s < 12; s++) {
+            slots.add(s);
+        }
+        Collections.shuffle(slots, new java.util.Random(42));
+        for (int i = 0; i < 12; i++) {
+            int slot = slots.get(i);
+            int page = slot / 6;
+            int x = 50 + (slot % 2) * 250;
+            int y = 700 - (slot % 6) / 2 * 40;
+            String rect;
+            if (i % 3 == 0) {
+                // Corners behind references
+                int[] corners = {x, y, x + 200, y + 20};
+                StringBuilder references = new StringBuilder("[");
+                for (int corner : corners) {
+                    form.objects.put(next, Integer.toString(corner));
+                    references.append(references.length() > 1 ? " " : "").append(next++).append(" 0 R");
+                }
+                rect = references.append(']').toString();
+            } else if (i % 4 == 1) {
+                // Corners in the other order
+                rect = "[" + (x + 200) + " " + (y + 20) + " " + x + " " + y + "]";
+            } else {
+                rect = "[" + x + " " + y + " " + (x + 200) + " " + (y + 20) + "]";
+            }
+            int field = next++;
+            form.objects.put(field, "<< /FT /Tx /T (Field" + i + ") /Type /Annot /Subtype /Widget /Rect " + rect
+                    + " /P " + (3 + page) + " 0 R >>");
+            form.fields.put("Field" + i, field);
+            annotations.get(page).add(field);
+            fields.add(field);
+        }
+
+        int escaped = next++;
+        form.objects.put(escaped, "<< /FT /Tx /T (a\\(b\\)\\101) /Subtype /Widget /Rect [50 100 250 120] /P 3 0 R >>");
+        int utf16 = next++;
+        form.objects.put(utf16, "<< /FT /Tx /T <FEFF00E9007400E9> /Subtype /Widget /Rect [300 100 500 120] /P 3 0 R >>");
+        annotations.get(0).add(escaped);
+        annotations.get(0).add(utf16);
+        fields.add(escaped);
+        fields.add(utf16);
+
+        // group.child0 and group.child1, the kids inherit /FT
+        int group = next++;
+        int child0 = next++;
+        int child1 = next++;
+        form.objects.put(group, "<< /FT /Tx /T (group) /Kids [" + child0 + " 0 R " + child1 + " 0 R] >>");
+        form.objects.put(child0, "<< /T (child0) /Parent " + group + " 0 R /Subtype /Widget /Rect [50 60 250 80] /P 4 0 R >>");
+        form.objects.put(child1, "<< /T (child1) /Parent " + group + " 0 R /Subtype /Widget /Rect [300 60 500 80] /P 4 0 R >>");
+        annotations.get(1).add(child1);
+        annotations.get(1).add(child0);
+        fields.add(group);
+
+        // One field, a widget on each page
+        int multi = next++;
+        int widget0 = next++;
+        int widget1 = next++;
+        form.objects.put(multi, "<< /FT /Tx /T (multi) /Kids [" + widget0 + " 0 R " + widget1 + " 0 R] >>");
+        form.objects.put(widget0, "<< /Parent " + multi + " 0 R /Subtype /Widget /Rect [50 20 250 40] /P 4 0 R >>");
+        form.objects.put(widget1, "<< /Parent " + multi + " 0 R /Subtype /Widget /Rect [50 20 250 40] /P 3 0 R >>");
+        annotations.get(1).add(widget0);
+        annotations.get(0).add(widget1);
+        fields.add(multi);
+
+        form.objects.put(1, "<< /Type /Catalog /Pages 2 0 R /AcroForm << /Fields " + references(fields)
+                + " /DA (/Helv 0 Tf 0 g) >> >>");
+        form.objects.put(2, "<< /Type /Pages /Kids [3 0 R 4 0 R] /Count 2 >>");
+        form.objects.put(3, "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] /Contents 5 0 R /Annots "
+                + references(annotations.get(0)) + " >>");
+        form.objects.put(4, "<< /Type /Page /Parent 2 0 R /MediaBox [0 0 612 792] /Contents 5 0 R /Annots 6 0 R >>");
+        String content = "0 0 m 612 792 l S";
+        form.objects.put(5, "<< /Length " + content.length() + " >>\nstream\n" + content + "\nendstream");
+        form.objects.put(6, references(annotations.get(1)));
+        form.pageTree.addAll(List.of(1, 2, 3, 4, 5));
+        form.size = next;
+        return form;
+    }
+
+    private static String references(List<Integer> numbers) {
+        StringBuilder array = new StringBuilder("[");
+        for (int number : numbers) {
+            array.append(array.length() > 1 ? " " : "").append(number).append(" 0 R");
+        }
+        return array.append(']').toString();
+    }
+
+    // Writes a PDF section by section, each with its own cross-reference section pointing to the one before
+    private static final class FormFile {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private int size;
+        private long previous = -1;
+
+        private FormFile(int size) {
+            this.size = size;
+            write("%PDF-1.5\n%âãÏÓ\n");
+        }
+
+        static byte[] single(Layout layout) {
+            Form form = form();
+            FormFile file = new FormFile(form.size);
+            Map<Integer, String> top = new TreeMap<>();
+            Map<Integer, String> compressed = new TreeMap<>();
+            for (Map.Entry<Integer, String> object : form.objects.entrySet()) {
+                boolean stream = object.getValue().contains("\nstream\n");
+                boolean atTop = layout == Layout.TABLE || layout == Layout.STREAM || stream
+                        || (layout == Layout.HYBRID && form.pageTree.contains(object.getKey()));
+                (atTop ? top : compressed).put(object.getKey(), object.getValue());
+            }
+            file.section(top, compressed, layout == Layout.OBJECT_STREAMS ? Layout.STREAM : layout);
+            return file.out.toByteArray();
+        }
+
+        // The form in a classic section, then an update in a classic section (a field renamed, one added), then
+        // one in an xref stream with an object stream (a field moved to the top of its page)
+        static byte[] incremental() {
+            Form form = form();
+            FormFile file = new FormFile(form.size);
+            file.section(form.objects, Collections.emptyMap(), Layout.TABLE);
+
+            Map<Integer, String> first = new TreeMap<>();
+            int renamed = form.fields.get("Field0");
+            first.put(renamed, form.objects.get(renamed).replace("(Field0)", "(Renamed)"));
+            int added = file.size++;
+            first.put(added, "<< /FT /Tx /T (Added) /Type /Annot /Subtype /Widget /Rect [50 740 250 760] /P 3 0 R >>");
+            first.put(1, form.objects.get(1).replace("/Fields [", "/Fields [" + added + " 0 R "));
+            first.put(3, form.objects.get(3).replace("/Annots [", "/Annots [" + added + " 0 R "));
+            file.section(first, Collections.emptyMap(), Layout.TABLE);
+
+            Map<Integer, String> second = new TreeMap<>();
+            int moved = form.fields.get("Field1");
+            second.put(moved, form.objects.get(moved).replaceAll("/Rect \\[[^]]*]", "/Rect [300 770 500 790]"));
+            file.section(Collections.emptyMap(), second, Layout.STREAM);
+            return file.out.toByteArray();
+        }
+
+        private void section(Map<Integer, String> top, Map<Integer, String> compressed, Layout layout) {
+            Map<Integer, Long> offsets = new TreeMap<>();
+            for (Map.Entry<Integer, String> object : top.entrySet()) {
+                offsets.put(object.getKey(), (long) out.size());
+                write(object.getKey() + " 0 obj\n" + object.getValue() + "\nendobj\n");
+            }
+
+            int objectStream = -1;
+            Map<Integer, Integer> indexes = new TreeMap<>();
+            if (!compressed.isEmpty()) {
+                objectStream = size++;
+                StringBuilder header = new StringBuilder();
+                StringBuilder objects = new StringBuilder();
+                for (Map.Entry<Integer, String> object : compressed.entrySet()) {
+                    header.append(object.getKey()).append(' ').append(objects.length()).append(' ');
+                    objects.append(object.getValue()).append('\n');
+                    indexes.put(object.getKey(), indexes.size());
+                }
+                offsets.put(objectStream, (long) out.size());
+                writeStream(objectStream, "/Type /ObjStm /N " + indexes.size() + " /First " + header.length()
+                        + " /Filter /FlateDecode", deflate(bytes(header.toString() + objects)));
+            }
+
+            long xref;
+            if (layout == Layout.TABLE) {
+                xref = out.size();
+                table(offsets, "");
+            } else if (layout == Layout.HYBRID) {
+                // The compressed objects are only in the stream; the table lists the rest, the object stream included
+                long stream = xrefStream(Collections.emptyMap(), indexes, objectStream, "");
+                xref = out.size();
+                table(offsets, " /XRefStm " + stream);
+            } else {
+                xref = xrefStream(offsets, indexes, objectStream, trailerEntries());
+            }
+            write("startxref\n" + xref + "\n%%EOF\n");
+            previous = xref;
+        }
+
+        private void table(Map<Integer, Long> offsets, String extraTrailer) {
+            StringBuilder table = new StringBuilder("xref\n");
+            if (previous < 0) {
+                table.append("0 1\n0000000000 65535 f \n");
+            }
+            for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                table.append(offset.getKey()).append(" 1\n").append(String.format("%010d 00000 n \n", offset.getValue()));
+            }
+            table.append("trailer\n<< ").append(trailerEntries()).append(extraTrailer).append(" >>\n");
+            write(table.toString());
+        }
+
+        private String trailerEntries() {
+            return "/Size " + size + " /Root 1 0 R" + (previous >= 0 ? " /Prev " + previous : "");
+        }
+
+        // Rows of type (1 byte), offset or object stream (4), generation or index (2), PNG Up predicted
+        private long xrefStream(Map<Integer, Long> offsets, Map<Integer, Integer> indexes, int objectStream, String trailer) {
+            int number = size++;
+            long position = out.size();
+            Map<Integer, long[]> rows = new TreeMap<>();
+            if (previous < 0 && !trailer.isEmpty()) {
+                rows.put(0, new long[]{0, 0, 65535});
+            }
+            for (Map.Entry<Integer, Long> offset : offsets.entrySet()) {
+                rows.put(offset.getKey(), new long[]{1, offset.getValue(), 0});
+            }
+            for (Map.Entry<Integer, Integer> index : indexes.entrySet()) {
+                rows.put(index.getKey(), new long[]{2, objectStream, index.getValue()});
+            }
+            rows.put(number, new long[]{1, position, 0});
+
+            StringBuilder index = new StringBuilder();
+            byte[] data = new byte[rows.size() * 8];
+            byte[] previousRow = new byte[7];
+            int at = 0;
+            for (Map.Entry<Integer, long[]> row : rows.entrySet()) {
+                index.append(index.length() > 0 ? " " : "").append(row.getKey()).append(" 1");
+                long[] fields = row.getValue();
+                byte[] raw = {(byte) fields[0], (byte) (fields[1] >> 24), (byte) (fields[1] >> 16), (byte) (fields[1] >> 8),
+                        (byte) fields[1], (byte) (fields[2] >> 8), (byte) fields[2]};
+                data[at++] = 2;
+                for (int i = 0; i < 7; i++) {
+                    data[at++] = (byte) (raw[i] - previousRow[i]);
+                }
+                previousRow = raw;
+            }
+            String dictionary = "/Type /XRef " + (trailer.isEmpty() ? "/Size " + size : trailer) + " /W [1 4 2] /Index ["
+                    + index + "] /Filter /FlateDecode /DecodeParms << /Predictor 12 /Columns 7 >>";
+            writeStream(number, dictionary, deflate(data));
+            return position;
+        }
+
+        private void writeStream(int number, String dictionary, byte[] data) {
+            write(number + " 0 obj\n<< " + dictionary + " /Length " + data.length + " >>\nstream\n");
+            out.write(data, 0, data.length);
+            write("\nendstream\nendobj\n");
+        }
+
+        private void write(String text) {
+            byte[] bytes = bytes(text);
+            out.write(bytes, 0, bytes.length);
+        }
+
+        private static byte[] bytes(String text) {
+            return text.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+        private static byte[] deflate(byte[] data) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package launchpad.benchmarks;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Cold start of the POI and PDFBox handlers. Every sample is a fresh JVM that creates the handler, which is what
+// Lambda's init phase does, and then answers one request. Each handler runs four ways: as before, with priming,
+// with an AppCDS archive trained on the priming run, and with both. The medians are printed.
+// JMH cannot measure this, because it reuses warm JVMs.
+//   mvn -B package && java -cp target/benchmarks.jar launchpad.benchmarks.ColdStartBenchmark [samples]
+public final class ColdStartBenchmark {
+
+    private static final String PROBE = "probe";
+    private static final String RESULT = "cold-start-result ";
+
+    // name, handler class, priming class (training run), document field, JSON field
+    private static final String[][] HANDLERS = {
+            {"ReplaceIDTags", "org.tags.ids.Main", "org.tags.ids.Priming", "base64Docx", "jsonInput"},
+            {"FillPDFFormSanitized", "launchpad.pdf.fill.sanitized.Main", "launchpad.pdf.fill.sanitized.Priming", "base64PDF", "jsonCase"},
+    };
+
+    private ColdStartBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && PROBE.equals(args[0])) {
+            probe(args[1], Paths.get(args[2]));
+            return;
+        }
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+
+        // CDS only archives classes loaded from jars, so this has to run from the shaded jar
+        Path jar = Paths.get(ColdStartBenchmark.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (!Files.isRegularFile(jar)) {
+            throw new IllegalStateException("Run from target/benchmarks.jar, not from " + jar);
+        }
+        Path work = Files.createTempDirectory("cold-start");
+
+        System.out.printf("%-22s %-18s %12s %12s %14s%n", "handler", "mode", "init ms", "first ms", "process ms");
+        for (String[] handler : HANDLERS) {
+            Path request = writeRequest(work, handler);
+            Path archive = work.resolve(handler[0] + ".jsa");
+            run(Arrays.asList("-XX:ArchiveClassesAtExit=" + archive, "-cp", jar.toString(), handler[2]), true);
+
+            report(handler[0], "baseline", jar, null, false, handler[1], request, samples);
+            report(handler[0], "priming", jar, null, true, handler[1], request, samples);
+            report(handler[0], "appcds", jar, archive, false, handler[1], request, samples);
+            report(handler[0], "priming+appcds", jar, archive, true, handler[1], request, samples);
+        }
+    }
+
+    private static Path writeRequest(Path work, String[] handler) throws IOException {
+        Properties request = new Properties();
+        if ("ReplaceIDTags".equals(handler[0])) {
+            request.setProperty(handler[3], Base64.getEncoder().encodeToString(CorpusGenerator.docx(200, 40, 42)));
+            request.setProperty(handler[4], CorpusGenerator.tagJson(40));
+        } else {
+            request.setProperty(handler[3], Base64.getEncoder().encodeToString(CorpusGenerator.pdfForm(40)));
+            request.setProperty(handler[4], CorpusGenerator.fieldJson(40));
+        }
+        Path file = work.resolve(handler[0] + ".properties");
+        try (Writer writer = Files.newBufferedWriter(file)) {
+            request.store(writer, null);
+        }
+        return file;
+    }
+
+    private static void report(String name, String mode, Path jar, Path archive, boolean priming, String handlerClass,
+                               Path request, int samples) throws Exception {
+        List<String> command = new ArrayList<>();
+        if (archive != null) {
+            command.add("-XX:SharedArchiveFile=" + archive);
+        }
+        command.addAll(Arrays.asList("-cp", jar.toString(), ColdStartBenchmark.class.getName(), PROBE, handlerClass, request.toString()));
+
+        double[] init = new double[samples];
+        double[] first = new double[samples];
+        double[] process = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            long start = System.nanoTime();
+            String[] result = run(command, priming).split(" ");
+            process[i] = (System.nanoTime() - start) / 1e6;
+            init[i] = Double.parseDouble(result[0]);
+            first[i] = Double.parseDouble(result[1]);
+        }
+        System.out.printf("%-22s %-18s %12.1f %12.1f %14.1f%n", name, mode, median(init), median(first), median(process));
+    }
+
+    // Starts a JVM and returns its result line (empty for the training run)
+    private static String run(List<String> jvmArgs, boolean priming) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+
+        ProcessBuilder builder = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD);
+        builder.environment().put("PRIMING", Boolean.toString(priming));
+        Process process = builder.start();
+
+        String result = "";
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT)) {
+                    result = line.substring(RESULT.length());
+                }
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("JVM failed: " + command);
+        }
+        return result;
+    }
+
+    // Runs in the fresh JVM: nothing of the handler is loaded before the clock starts
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void probe(String handlerClass, Path requestFile) throws Exception {
+        Properties request = new Properties();
+        try (Reader reader = Files.newBufferedReader(requestFile)) {
+            request.load(reader);
+        }
+        Map<String, String> input = new HashMap<>();
+        for (String name : request.stringPropertyNames()) {
+            input.put(name, request.getProperty(name));
+        }
+        Context context = new BenchmarkContext();
+
+        long start = System.nanoTime();
+        RequestHandler handler = (RequestHandler) Class.forName(handlerClass).getDeclaredConstructor().newInstance();
+        long ready = System.nanoTime();
+        Object response = handler.handleRequest(input, context);
+        long done = System.nanoTime();
+
+        if (!(response instanceof String) || ((String) response).startsWith("Error")) {
+            throw new IllegalStateException("Handler failed: " + response);
+        }
+        System.out.println(RESULT + (ready - start) / 1e6 + " " + (done - ready) / 1e6);
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
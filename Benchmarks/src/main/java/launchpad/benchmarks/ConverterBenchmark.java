@@ -0,0 +1,104 @@
+package launchpad.benchmarks;
+
+import org.example.convert.Main;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The FromBase64toDOCXfile converter on files in a temp directory: one document decoded and encoded, and a directory
+// of files documents decoded on the worker threads. The document is a generated DOCX with an image of sizeKb, its
+// Base64 text wrapped at 76 characters as a mail client or editor leaves it. decodeInMemory reads the whole text and
+// decodes it in one call, as the converter did before it streamed; compare it with decodeFile.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+    @Param({"64", "4096"})
+    int sizeKb;
+
+    @Param({"20"})
+    int files;
+
+    Path directory;
+    Path docx;
+    Path text;
+    Path decoded;
+    Path encoded;
+    Path inputDirectory;
+    Path outputDirectory;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("converter-benchmark");
+        byte[] document = CorpusGenerator.docx(20, 0, false, 0, sizeKb, 42);
+        byte[] base64 = Base64.getMimeEncoder().encode(document);
+
+        docx = Files.write(directory.resolve("document.docx"), document);
+        text = Files.write(directory.resolve("document.txt"), base64);
+        decoded = directory.resolve("decoded.docx");
+        encoded = directory.resolve("encoded.txt");
+
+        inputDirectory = Files.createDirectories(directory.resolve("input"));
+        outputDirectory = directory.resolve("output");
+        for (int f = 0; f < files; f++) {
+            Files.write(inputDirectory.resolve("document" + f + ".txt"), base64);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public Path decodeFile() throws IOException {
+        Main.convert(text, decoded, true);
+        return decoded;
+    }
+
+    @Benchmark
+    public Path encodeFile() throws IOException {
+        Main.convert(docx, encoded, false);
+        return encoded;
+    }
+
+    @Benchmark
+    public List<Path> decodeDirectory() throws IOException, InterruptedException {
+        Map<Path, Path> targets = Main.targets(inputDirectory, outputDirectory, true);
+        return Main.convertAll(targets, true);
+    }
+
+    @Benchmark
+    public Path decodeInMemory() throws IOException {
+        String base64 = new String(Files.readAllBytes(text), StandardCharsets.UTF_8);
+        return Files.write(decoded, Base64.getMimeDecoder().decode(base64));
+    }
+}
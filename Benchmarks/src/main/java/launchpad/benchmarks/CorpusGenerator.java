@@ -0,0 +1,213 @@
+package launchpad.benchmarks;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+import org.apache.poi.util.Units;
+import org.apache.poi.xwpf.usermodel.Document;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+// Synthetic, reproducible inputs for the benchmarks, along the dimensions that make the functions slow:
+// paragraph count, tag count, tags split across runs, table rows, AcroForm field count and embedded image weight.
+// Tags are {{Case.FieldN}}, PDF fields are FieldN, and the JSON generators produce the matching keys.
+public final class CorpusGenerator {
+
+    private CorpusGenerator() {
+    }
+
+    public static byte[] docx(int paragraphs, int tags, long seed) {
+        return docx(paragraphs, tags, true, 0, 0, seed);
+    }
+
+    // A tag from {{Case.Field0}}..{{Case.Field<tags-1>}} in roughly every second paragraph, optionally split over
+    // two runs the way Word splits edited text; a 3-column table (header row plus tableRows rows, one tag per row);
+    // and one picture of imageKb kilobytes of incompressible bytes, which every zip copy has to carry
+    public static byte[] docx(int paragraphs, int tags, boolean splitRuns, int tableRows, int imageKb, long seed) {
+        Random random = new Random(seed);
+        try (XWPFDocument document = new XWPFDocument()) {
+            if (tableRows > 0) {
+                XWPFTable table = document.createTable(1, 3);
+                XWPFTableRow header = table.getRow(0);
+                header.getCell(0).setText("Field");
+                header.getCell(1).setText("Tag");
+                header.getCell(2).setText("Value");
+                for (int r = 0; r < tableRows; r++) {
+                    XWPFTableRow row = table.createRow();
+                    int key = random.nextInt(Math.max(tags, 1));
+                    row.getCell(0).setText("Case.Field" + key);
+                    row.getCell(1).setText("{{Case.Field" + key + "}}");
+                    row.getCell(2).setText("lorem ipsum");
+                }
+            }
+
+            for (int p = 0; p < paragraphs; p++) {
+                XWPFParagraph paragraph = document.createParagraph();
+                if (tags > 0 && random.nextBoolean()) {
+                    String tag = "{{Case.Field" + random.nextInt(tags) + "}}";
+                    if (splitRuns) {
+                        int split = 2 + random.nextInt(tag.length() - 3);
+                        paragraph.createRun().setText("lorem ipsum dolor " + tag.substring(0, split));
+                        paragraph.createRun().setText(tag.substring(split) + " sit amet");
+                    } else {
+                        paragraph.createRun().setText("lorem ipsum dolor " + tag + " sit amet");
+                    }
+                } else {
+                    paragraph.createRun().setText("lorem ipsum dolor sit amet, consectetur adipiscing elit");
+                }
+            }
+
+            if (imageKb > 0) {
+                byte[] image = new byte[imageKb * 1024];
+                random.nextBytes(image);
+                XWPFRun run = document.createParagraph().createRun();
+                run.addPicture(new ByteArrayInputStream(image), Document.PICTURE_TYPE_PNG, "image.png",
+                        Units.toEMU(200), Units.toEMU(100));
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.write(output);
+            return output.toByteArray();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // {"{{Case.Field0}}": "value 0", ...}
+    public static String tagJson(int keys) {
+        StringBuilder json = new StringBuilder("{");
+        for (int k = 0; k < keys; k++) {
+            json.append(k == 0 ? "" : ",").append("\"{{Case.Field").append(k).append("}}\":\"value ").append(k).append('"');
+        }
+        return json.append('}').toString();
+    }
+
+    // {root: {"QuestionGroup": [{"QuestionGroupID", "Name", "Question": [{"QuestionID", "Name", "Answer": [...]}]}]}}
+    // with the IDs numbered Case.Field0, Case.Field1, ... in document order, so they match the docx tags
+    public static String questionnaireJson(String root, int groups, int questionsPerGroup, int answersPerQuestion) {
+        StringBuilder json = new StringBuilder("{\"").append(root).append("\":{\"QuestionGroup\":[");
+        int id = 0;
+        for (int g = 0; g < groups; g++) {
+            json.append(g == 0 ? "" : ",").append("{\"QuestionGroupID\":\"Case.Field").append(id++)
+                    .append("\",\"Name\":\"Group ").append(g).append("\",\"Question\":[");
+            for (int q = 0; q < questionsPerGroup; q++) {
+                json.append(q == 0 ? "" : ",").append("{\"QuestionID\":\"Case.Field").append(id++)
+                        .append("\",\"Name\":\"Question ").append(g).append('.').append(q).append("\",\"Answer\":[");
+                for (int a = 0; a < answersPerQuestion; a++) {
+                    json.append(a == 0 ? "" : ",").append("{\"AnswerID\":\"Case.Field").append(id++)
+                            .append("\",\"Name\":\"Answer ").append(a).append("\"}");
+                }
+                json.append("]}");
+            }
+            json.append("]}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    // "Case.Field0/{{Case.Field0}},..." for SupportingDocNoDuplicates, with duplicatePercent of the pairs repeated
+    public static String fieldsAndTags(int pairs, int duplicatePercent, long seed) {
+        Random random = new Random(seed);
+        StringBuilder fields = new StringBuilder();
+        for (int i = 0; i < pairs; i++) {
+            int key = random.nextInt(100) < duplicatePercent && i > 0 ? random.nextInt(i) : i;
+            fields.append(i == 0 ? "" : ",").append("Case.Field").append(key).append("/{{Case.Field").append(key).append("}}");
+        }
+        return fields.toString();
+    }
+
+    public static byte[] pdfForm(int fields) {
+        return pdfForm(fields, 0, 42);
+    }
+
+    // Text fields Field0..Field<fields-1>, 25 to a page in shuffled creation order (so reading order has to sort),
+    // and a noise image of about imageKb kilobytes on the first page
+    public static byte[] pdfForm(int fields, int imageKb, long seed) {
+        Random random = new Random(seed);
+        try (PDDocument document = new PDDocument()) {
+            PDAcroForm acroForm = new PDAcroForm(document);
+            document.getDocumentCatalog().setAcroForm(acroForm);
+            PDResources resources = new PDResources();
+            resources.put(COSName.getPDFName("Helv"), PDType1Font.HELVETICA);
+            acroForm.setDefaultResources(resources);
+            acroForm.setDefaultAppearance("/Helv 0 Tf 0 g");
+
+            int pages = Math.max(1, (fields + 24) / 25);
+            PDPage[] pageList = new PDPage[pages];
+            for (int p = 0; p < pages; p++) {
+                pageList[p] = new PDPage();
+                document.addPage(pageList[p]);
+            }
+
+            int[] order = new int[fields];
+            for (int f = 0; f < fields; f++) {
+                order[f] = f;
+            }
+            for (int f = fields - 1; f > 0; f--) {
+                int other = random.nextInt(f + 1);
+                int swap = order[f];
+                order[f] = order[other];
+                order[other] = swap;
+            }
+            for (int f : order) {
+                PDPage page = pageList[f / 25];
+                PDTextField field = new PDTextField(acroForm);
+                field.setPartialName("Field" + f);
+                PDAnnotationWidget widget = field.getWidgets().get(0);
+                int slot = f % 25;
+                widget.setRectangle(new PDRectangle(50 + (slot % 2) * 260, 740 - (slot / 2) * 56, 240, 20));
+                widget.setPage(page);
+                page.getAnnotations().add(widget);
+                acroForm.getFields().add(field);
+            }
+
+            if (imageKb > 0) {
+                // RGB noise does not compress, so the stream is about width * height * 3 bytes
+                int side = (int) Math.sqrt(imageKb * 1024 / 3.0);
+                BufferedImage image = new BufferedImage(side, side, BufferedImage.TYPE_INT_RGB);
+                for (int y = 0; y < side; y++) {
+                    for (int x = 0; x < side; x++) {
+                        image.setRGB(x, y, random.nextInt(0x1000000));
+                    }
+                }
+                PDImageXObject xObject = LosslessFactory.createFromImage(document, image);
+                try (PDPageContentStream content = new PDPageContentStream(document, pageList[0])) {
+                    content.drawImage(xObject, 400, 20, 150, 150);
+                }
+            }
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.save(output);
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // {"Field0": "value 0", ...}
+    public static String fieldJson(int fields) {
+        StringBuilder json = new StringBuilder("{");
+        for (int f = 0; f < fields; f++) {
+            json.append(f == 0 ? "" : ",").append("\"Field").append(f).append("\":\"value ").append(f).append('"');
+        }
+        return json.append('}').toString();
+    }
+}
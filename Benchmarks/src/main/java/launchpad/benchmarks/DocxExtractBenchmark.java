@@ -0,0 +1,64 @@
+package launchpad.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Tag extraction through handleRequest: ExtractTagsFromDocx (StAX) and ExtractTagsDocsInvalidInputs (POI walk and
+// validation). tags, splitRuns and tableRows can be varied with -p.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocxExtractBenchmark {
+
+    @Param({"200", "2000"})
+    int paragraphs;
+
+    @Param({"0", "2048"})
+    int imageKb;
+
+    @Param({"100"})
+    int tags;
+
+    @Param({"true"})
+    boolean splitRuns;
+
+    @Param({"0"})
+    int tableRows;
+
+    private final BenchmarkContext context = new BenchmarkContext();
+
+    Map<String, Object> input;
+
+    @Setup
+    public void setUp() {
+        input = new HashMap<>();
+        input.put("docxBase64", Base64.getEncoder().encodeToString(CorpusGenerator.docx(paragraphs, tags, splitRuns, tableRows, imageKb, 42)));
+    }
+
+    @Benchmark
+    public String extractTagsFromDocx() {
+        return new launchpad.docx.tags.Main().handleRequest(input, context);
+    }
+
+    @Benchmark
+    public String extractTagsDocsInvalidInputs() {
+        return new launchpad.docx.extract.Main().handleRequest(input, context);
+    }
+}
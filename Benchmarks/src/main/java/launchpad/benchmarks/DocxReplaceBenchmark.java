@@ -0,0 +1,115 @@
+package launchpad.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Tag replacement end to end, through the same handleRequest Lambda calls: ReplaceIDTags (POI, streaming StAX and the
+// stream handler) and ReplaceIDs, and rendering a template compiled once (CompiledTemplate). Only the first two dimensions vary by default, the others with -p, e.g.
+//   java -jar target/benchmarks.jar DocxReplaceBenchmark -p tags=10,800 -p splitRuns=false,true -prof gc
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocxReplaceBenchmark {
+
+    @Param({"200", "2000"})
+    int paragraphs;
+
+    @Param({"0", "2048"})
+    int imageKb;
+
+    @Param({"100"})
+    int tags;
+
+    @Param({"true"})
+    boolean splitRuns;
+
+    @Param({"0"})
+    int tableRows;
+
+    private final BenchmarkContext context = new BenchmarkContext();
+
+    Map<String, String> input;
+    Map<String, String> streamingInput;
+    byte[] streamRequest;
+    String base64Docx;
+    String questionnaireJson;
+    org.tags.ids.CompiledTemplate compiledTemplate;
+    String jsonInput;
+
+    @Setup
+    public void setUp() throws IOException {
+        // The replacers print every replaced run: building the lines is measured, the console is not
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        base64Docx = Base64.getEncoder().encodeToString(CorpusGenerator.docx(paragraphs, tags, splitRuns, tableRows, imageKb, 42));
+
+        input = new HashMap<>();
+        input.put("base64Docx", base64Docx);
+        input.put("jsonInput", CorpusGenerator.tagJson(tags));
+        streamingInput = new HashMap<>(input);
+        streamingInput.put("streaming", "true");
+        streamRequest = new ObjectMapper().writeValueAsBytes(input);
+
+        jsonInput = input.get("jsonInput");
+        try {
+            compiledTemplate = org.tags.ids.Main.compileTemplate(new ByteArrayInputStream(Base64.getDecoder().decode(base64Docx)), false);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+
+        // ReplaceIDs takes {{ID}} tags and a questionnaire; 2 answers per question keeps the IDs at about tags
+        questionnaireJson = CorpusGenerator.questionnaireJson("Questionnaire", Math.max(1, tags / 30), 10, 2);
+    }
+
+    @Benchmark
+    public String replaceIdTags() {
+        return new org.tags.ids.Main().handleRequest(input, context);
+    }
+
+    @Benchmark
+    public String replaceIdTagsStreaming() {
+        return new org.tags.ids.Main().handleRequest(streamingInput, context);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream replaceIdTagsStreamHandler() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new org.tags.ids.StreamHandler().handleRequest(new ByteArrayInputStream(streamRequest), output, context);
+        return output;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream renderCompiledTemplate() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        org.tags.ids.Main.renderTemplate(compiledTemplate, jsonInput, output);
+        return output;
+    }
+
+    @Benchmark
+    public String replaceIds() throws Exception {
+        return org.example.Main.replaceTagsInDocx(base64Docx, questionnaireJson);
+    }
+}
@@ -0,0 +1,74 @@
+package launchpad.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The table writers: PopulateQuestionnaire (through its stream handler, the String handler takes a package-private
+// input type) and SupportingDocNoDuplicates, by template table rows and by the number of rows to write.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocxTableBenchmark {
+
+    @Param({"10", "500"})
+    int tableRows;
+
+    @Param({"50", "1000"})
+    int entries;
+
+    @Param({"30"})
+    int duplicatePercent;
+
+    private final BenchmarkContext context = new BenchmarkContext();
+
+    byte[] questionnaireRequest;
+    Map<String, String> supportingInput;
+
+    @Setup
+    public void setUp() throws IOException {
+        String base64Docx = Base64.getEncoder().encodeToString(CorpusGenerator.docx(20, 0, false, tableRows, 0, 42));
+
+        // entries questions in groups of 10, 2 answers each
+        Map<String, String> questionnaire = new HashMap<>();
+        questionnaire.put("docxBase64", base64Docx);
+        questionnaire.put("jsonInput", CorpusGenerator.questionnaireJson("Q1", Math.max(1, entries / 10), 10, 2));
+        questionnaireRequest = new ObjectMapper().writeValueAsBytes(questionnaire);
+
+        supportingInput = new HashMap<>();
+        supportingInput.put("base64Docx", base64Docx);
+        supportingInput.put("fieldsAndTags", CorpusGenerator.fieldsAndTags(entries, duplicatePercent, 42));
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream populateQuestionnaire() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new org.questionnaire.StreamHandler().handleRequest(new ByteArrayInputStream(questionnaireRequest), output, context);
+        return output;
+    }
+
+    @Benchmark
+    public String supportingDocNoDuplicates() {
+        return new fields.supporting.dup.Main().handleRequest(supportingInput, context);
+    }
+}
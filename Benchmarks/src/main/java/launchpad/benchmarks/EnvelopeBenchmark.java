@@ -0,0 +1,191 @@
+package launchpad.benchmarks;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+// EnvelopeToBase64 (String and stream handler) against an in-process HTTPS server standing in for the envelope API.
+// keepAlive=false has the server answer Connection: close, so every call pays the TCP and TLS handshakes as the
+// per-call HttpURLConnection did; keepAlive=true reuses the shared client's pooled connection. gzip compresses the
+// response when the client accepts it (the payload is a PDF, so mostly already compressed). The JDK server speaks
+// HTTP/1.1 only, HTTP/2 is not exercised. The self-signed certificate is made with the JDK's keytool and installed
+// as the default SSLContext before the first call builds the client. envelopeToBase64Batch fetches documents copies
+// in one call through the batch mode; compare it with documents times envelopeToBase64.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EnvelopeBenchmark {
+
+    private static final char[] STORE_PASSWORD = "benchmark".toCharArray();
+
+    @Param({"64", "4096"})
+    int sizeKb;
+
+    @Param({"true", "false"})
+    boolean keepAlive;
+
+    @Param({"false", "true"})
+    boolean gzip;
+
+    @Param({"20"})
+    int documents;
+
+    private final BenchmarkContext context = new BenchmarkContext();
+
+    private HttpsServer server;
+    private ExecutorService serverThreads;
+    Map<String, Object> input;
+    byte[] request;
+    Map<String, Object> batchInput;
+
+    @Setup
+    public void setUp() throws IOException, GeneralSecurityException, InterruptedException {
+        byte[] payload = CorpusGenerator.pdfForm(20, sizeKb, 42);
+        byte[] compressed = gzip(payload);
+
+        SSLContext ssl = selfSignedContext();
+        SSLContext.setDefault(ssl);
+
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(ssl));
+        // Concurrent exchanges for the batch, the default runs every handler on the one dispatcher thread
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.createContext("/envelope", exchange -> {
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean compress = gzip && acceptEncoding != null && acceptEncoding.contains("gzip");
+            byte[] body = compress ? compressed : payload;
+            if (compress) {
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            if (!keepAlive) {
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+
+        input = new HashMap<>();
+        input.put("url", "https://localhost:" + server.getAddress().getPort() + "/envelope");
+        input.put("authToken", "Bearer benchmark");
+        request = ("{\"url\":\"" + input.get("url") + "\",\"authToken\":\"Bearer benchmark\"}").getBytes(StandardCharsets.UTF_8);
+
+        List<Map<String, Object>> batch = new ArrayList<>();
+        for (int d = 0; d < documents; d++) {
+            Map<String, Object> document = new HashMap<>();
+            document.put("url", input.get("url"));
+            batch.add(document);
+        }
+        batchInput = new HashMap<>();
+        batchInput.put("authToken", "Bearer benchmark");
+        batchInput.put("documents", batch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public String envelopeToBase64() {
+        return new org.envelope.base64.Main().handleRequest(input, context);
+    }
+
+    @Benchmark
+    public String envelopeToBase64Batch() {
+        return new org.envelope.base64.Main().handleRequest(batchInput, context);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream envelopeToBase64StreamHandler() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new org.envelope.base64.StreamHandler().handleRequest(new ByteArrayInputStream(request), output, context);
+        return output;
+    }
+
+    static byte[] gzip(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+            output.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+
+    // Key pair and certificate for localhost from keytool, used by the server and trusted by the client
+    static SSLContext selfSignedContext() throws IOException, GeneralSecurityException, InterruptedException {
+        Path directory = Files.createTempDirectory("envelope-benchmark");
+        Path store = directory.resolve("localhost.p12");
+        try {
+            Process keytool = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "keytool").toString(),
+                    "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-groupname", "secp256r1",
+                    "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2",
+                    "-storetype", "PKCS12", "-keystore", store.toString(),
+                    "-storepass", new String(STORE_PASSWORD), "-keypass", new String(STORE_PASSWORD))
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (keytool.waitFor() != 0) {
+                throw new IOException("keytool failed with exit code " + keytool.exitValue());
+            }
+
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            try (InputStream storeInput = Files.newInputStream(store)) {
+                keyStore.load(storeInput, STORE_PASSWORD);
+            }
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(keyStore, STORE_PASSWORD);
+            TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trust.init(keyStore);
+
+            SSLContext ssl = SSLContext.getInstance("TLS");
+            ssl.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+            return ssl;
+        } finally {
+            Files.deleteIfExists(store);
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package launchpad.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.envelope.base64.Main;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+
+// Build check, run in the test phase of this module: EnvelopeToBase64's client against the in-process HTTPS server of
+// EnvelopeBenchmark. The decoded document has to equal the payload for a body with a Content-Length, a chunked one,
+// gzip and deflate; 503, 503, 200 has to succeed on the last of the two retries and 503 three times to fail; a 404 is
+// not retried and the handler returns its error string. Run with the default HTTP_RETRIES.
+public final class EnvelopeCheck {
+
+    private static final String TOKEN = "Bearer check";
+
+    // Requests per path, and the Authorization and Accept-Encoding headers they came with
+    private static final Map<String, AtomicInteger> REQUESTS = new ConcurrentHashMap<>();
+    private static final List<String> HEADERS = new ArrayList<>();
+
+    private EnvelopeCheck() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        byte[] payload = CorpusGenerator.pdfForm(20, 256, 42);
+        SSLContext ssl = EnvelopeBenchmark.selfSignedContext();
+        SSLContext.setDefault(ssl);
+
+        HttpsServer server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(ssl));
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            int request = REQUESTS.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+            synchronized (HEADERS) {
+                HEADERS.add(exchange.getRequestHeaders().getFirst("Authorization") + ", "
+                        + exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            }
+            switch (path) {
+                case "/plain":
+                    respond(exchange, 200, payload, payload.length);
+                    break;
+                case "/chunked":
+                    respond(exchange, 200, payload, 0);
+                    break;
+                case "/gzip":
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    respond(exchange, 200, EnvelopeBenchmark.gzip(payload), 0);
+                    break;
+                case "/deflate":
+                    exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+                    respond(exchange, 200, deflate(payload), 0);
+                    break;
+                case "/flaky":
+                    if (request <= 2) {
+                        respond(exchange, 503, new byte[0], -1);
+                    } else {
+                        respond(exchange, 200, payload, payload.length);
+                    }
+                    break;
+                case "/down":
+                    respond(exchange, 503, new byte[0], -1);
+                    break;
+                default:
+                    byte[] notFound = "not found".getBytes(StandardCharsets.US_ASCII);
+                    respond(exchange, 404, notFound, notFound.length);
+            }
+        });
+        server.start();
+
+        List<String> problems = new ArrayList<>();
+        String base = "https://localhost:" + server.getAddress().getPort();
+        try {
+            for (String body : new String[]{"plain", "chunked", "gzip", "deflate", "flaky"}) {
+                try {
+                    byte[] decoded = Base64.getDecoder().decode(Main.fetchPdfAsBase64(base + "/" + body, TOKEN));
+                    if (!Arrays.equals(decoded, payload)) {
+                        problems.add(body + ": " + decoded.length + " bytes decoded that differ from the "
+                                + payload.length + " byte payload");
+                    }
+                } catch (Exception e) {
+                    problems.add(body + ": " + e);
+                }
+            }
+            expectRequests(problems, "flaky", 3);
+
+            expectError(problems, base + "/down");
+            expectRequests(problems, "down", 3);
+            expectError(problems, base + "/missing");
+            expectRequests(problems, "missing", 1);
+
+            for (String headers : HEADERS) {
+                if (!headers.equals(TOKEN + ", gzip, deflate")) {
+                    problems.add("request headers " + headers);
+                    break;
+                }
+            }
+        } finally {
+            server.stop(0);
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("EnvelopeClient: " + HEADERS.size() + " requests decoded, retried and mapped as expected");
+        // The shared client's selector thread is not a daemon
+        System.exit(0);
+    }
+
+    private static void expectError(List<String> problems, String url) {
+        Map<String, Object> input = new HashMap<>();
+        input.put("url", url);
+        input.put("authToken", TOKEN);
+        String result = new Main().handleRequest(input, new BenchmarkContext());
+        if (!"Error processing request".equals(result)) {
+            problems.add(url + " returned " + (result.length() > 80 ? result.substring(0, 80) + "..." : result));
+        }
+    }
+
+    private static void expectRequests(List<String> problems, String path, int expected) {
+        AtomicInteger requests = REQUESTS.get("/" + path);
+        int actual = requests != null ? requests.get() : 0;
+        if (actual != expected) {
+            problems.add(path + ": " + actual + " requests, expected " + expected);
+        }
+    }
+
+    // length 0 sends the body chunked, -1 sends none
+    private static void respond(HttpExchange exchange, int status, byte[] body, long length) throws IOException {
+        exchange.sendResponseHeaders(status, length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    // zlib format, what Content-Encoding: deflate means
+    private static byte[] deflate(byte[] payload) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream output = new DeflaterOutputStream(compressed)) {
+            output.write(payload);
+        }
+        return compressed.toByteArray();
+    }
+}
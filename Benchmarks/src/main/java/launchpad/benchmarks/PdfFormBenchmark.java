@@ -0,0 +1,117 @@
+package launchpad.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// The AcroForm functions through handleRequest: FillPDFFormSanitized (String and stream handler),
+// ExtractPDFFillableFields and ExtractOrderedFillableFields, by field count and embedded image weight.
+// fillPdfFormSanitizedBatch fills cases copies of the template in one call; divide by cases to compare it with
+// fillPdfFormSanitized. Every call sends the same template, so the fills hit FillPDFFormSanitized's template cache;
+// start with TEMPLATE_CACHE_MB=0 in the environment to measure parsing every time. appearances is the fill's
+// appearance mode (immediate or needAppearances); the extract functions ignore it.
+// fillPdfFormSanitizedIncremental saves as an incremental update, which reparses the template instead of copying it.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfFormBenchmark {
+
+    @Param({"20", "400"})
+    int fields;
+
+    @Param({"0", "2048"})
+    int imageKb;
+
+    @Param({"50"})
+    int cases;
+
+    @Param({"immediate", "needAppearances"})
+    String appearances;
+
+    private final BenchmarkContext context = new BenchmarkContext();
+
+    Map<String, Object> fillInput;
+    Map<String, Object> incrementalInput;
+    byte[] fillRequest;
+    Map<String, Object> batchInput;
+    Map<String, Object> extractInput;
+
+    @Setup
+    public void setUp() throws IOException {
+        String base64Pdf = Base64.getEncoder().encodeToString(CorpusGenerator.pdfForm(fields, imageKb, 42));
+
+        fillInput = new HashMap<>();
+        fillInput.put("base64PDF", base64Pdf);
+        fillInput.put("jsonCase", CorpusGenerator.fieldJson(fields));
+        fillInput.put("appearances", appearances);
+        fillRequest = new ObjectMapper().writeValueAsBytes(fillInput);
+        incrementalInput = new HashMap<>(fillInput);
+        incrementalInput.put("save", "incremental");
+
+        List<String> jsonCases = new ArrayList<>();
+        for (int c = 0; c < cases; c++) {
+            jsonCases.add(CorpusGenerator.fieldJson(fields));
+        }
+        batchInput = new HashMap<>();
+        batchInput.put("base64PDF", base64Pdf);
+        batchInput.put("jsonCases", jsonCases);
+        batchInput.put("appearances", appearances);
+
+        extractInput = new HashMap<>();
+        extractInput.put("base64Pdf", base64Pdf);
+    }
+
+    @Benchmark
+    public String fillPdfFormSanitized() {
+        return new launchpad.pdf.fill.sanitized.Main().handleRequest(fillInput, context);
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream fillPdfFormSanitizedStreamHandler() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new launchpad.pdf.fill.sanitized.StreamHandler().handleRequest(new ByteArrayInputStream(fillRequest), output, context);
+        return output;
+    }
+
+    @Benchmark
+    public String fillPdfFormSanitizedIncremental() {
+        return new launchpad.pdf.fill.sanitized.Main().handleRequest(incrementalInput, context);
+    }
+
+    @Benchmark
+    public String fillPdfFormSanitizedBatch() {
+        return new launchpad.pdf.fill.sanitized.Main().handleRequest(batchInput, context);
+    }
+
+    @Benchmark
+    public String extractPdfFillableFields() {
+        return new fields.extract.Main().handleRequest(extractInput, context);
+    }
+
+    @Benchmark
+    public String extractOrderedFillableFields() {
+        return new launchpad.pdf.extract.Main().handleRequest(extractInput, context);
+    }
+}
@@ -0,0 +1,77 @@
+package launchpad.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Build check, run in the test phase of this module: every function is its own Lambda jar with no shared artifact,
+// so the helpers they have in common are copied into each of them and may differ only in the package line. A fix
+// applied to some of the copies fails the build here. Argument: the repository root (default ..).
+public final class SharedSources {
+
+    // File names of the copied helpers
+    private static final String[] COPIED = {"DocumentStore.java", "StreamingRequest.java", "AcroFormReader.java", "MemoryPolicy.java"};
+
+    private SharedSources() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path root = Paths.get(args.length > 0 ? args[0] : "..").toAbsolutePath().normalize();
+        List<String> problems = new ArrayList<>();
+        int checked = 0;
+        for (String name : COPIED) {
+            List<Path> copies = copies(root, name);
+            if (copies.size() < 2) {
+                problems.add(name + ": " + copies.size() + " copies under " + root);
+                continue;
+            }
+            List<String> reference = withoutPackage(copies.get(0));
+            for (Path copy : copies.subList(1, copies.size())) {
+                int line = firstDifference(reference, withoutPackage(copy));
+                if (line >= 0) {
+                    problems.add(root.relativize(copy) + " differs from " + root.relativize(copies.get(0))
+                            + " at line " + (line + 2));
+                }
+            }
+            checked += copies.size();
+        }
+
+        if (!problems.isEmpty()) {
+            problems.forEach(System.err::println);
+            System.exit(1);
+        }
+        System.out.println("Shared sources: " + checked + " copies of " + COPIED.length + " helpers are identical");
+    }
+
+    // The copies under the modules' src/main/java, build output excluded
+    private static List<Path> copies(Path root, String name) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(file -> file.getFileName().toString().equals(name))
+                    .filter(file -> file.toString().contains("src" + file.getFileSystem().getSeparator() + "main"))
+                    .filter(file -> !root.relativize(file).toString().contains("target" + file.getFileSystem().getSeparator()))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> withoutPackage(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return lines.isEmpty() || !lines.get(0).startsWith("package ") ? lines : lines.subList(1, lines.size());
+    }
+
+    // -1 when equal
+    private static int firstDifference(List<String> first, List<String> second) {
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i >= first.size() || i >= second.size() || !first.get(i).equals(second.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,93 @@
+package launchpad.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tags.ids.TagReplacer;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Paragraph text replacement of org.tags.ids.Main: the per-key contains/replace loop against the compiled automaton.
+// The automaton's time per operation should grow with the paragraph count only, whatever the key count.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagReplacerBenchmark {
+
+    @Param({"500", "2000", "8000"})
+    int paragraphs;
+
+    @Param({"10", "100", "800"})
+    int keys;
+
+    String[] paragraphTexts;
+    JsonNode rootNode;
+
+    @Setup
+    public void setUp() {
+        ObjectNode json = new ObjectMapper().createObjectNode();
+        for (int k = 0; k < keys; k++) {
+            json.put("{{Case.Field" + k + "}}", "value " + k);
+        }
+        rootNode = json;
+
+        Random random = new Random(42);
+        paragraphTexts = new String[paragraphs];
+        for (int p = 0; p < paragraphs; p++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 12; w++) {
+                text.append("lorem ipsum dolor ");
+                // Roughly one tag every two paragraphs, a few of them unknown to the JSON
+                if (w == 6 && random.nextBoolean()) {
+                    text.append("{{Case.Field").append(random.nextInt(keys + keys / 10 + 1)).append("}} ");
+                }
+            }
+            paragraphTexts[p] = text.toString();
+        }
+    }
+
+    @Benchmark
+    public void automaton(Blackhole blackhole) {
+        TagReplacer replacer = TagReplacer.compile(rootNode);
+        for (String text : paragraphTexts) {
+            blackhole.consume(replacer.replace(text));
+        }
+    }
+
+    @Benchmark
+    public void containsReplaceLoop(Blackhole blackhole) {
+        for (String text : paragraphTexts) {
+            blackhole.consume(replaceTagsPerKey(text, rootNode));
+        }
+    }
+
+    // The previous implementation: every key is searched in every paragraph
+    private static String replaceTagsPerKey(String text, JsonNode rootNode) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            String tag = entry.getKey();
+            if (text.contains(tag)) {
+                text = text.replace(tag, entry.getValue().asText());
+            }
+        }
+        return text;
+    }
+}
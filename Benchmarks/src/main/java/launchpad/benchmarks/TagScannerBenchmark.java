@@ -0,0 +1,86 @@
+package launchpad.benchmarks;
+
+import launchpad.docx.extract.TagScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Tag detection of launchpad.docx.extract.Main: the three-way alternation regex against the hand-written TagScanner.
+// Both count the tags and the too-long ones; run with -prof gc to compare the allocation rate.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TagScannerBenchmark {
+
+    private static final Pattern TAG_PATTERN = Pattern.compile("\\{\\{([^\\}]+)\\}\\}|\\{([^\\}]+)\\}\\}|\\{\\{([^\\}]+)\\}");
+
+    @Param({"200", "2000"})
+    int paragraphs;
+
+    // Share of tags written as {tag}} or {{tag}
+    @Param({"0", "20"})
+    int malformedPercent;
+
+    String[] paragraphTexts;
+    TagScanner scanner;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        paragraphTexts = new String[paragraphs];
+        for (int p = 0; p < paragraphs; p++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < 10; w++) {
+                text.append("lorem ipsum dolor sit amet ");
+                if (random.nextInt(3) == 0) {
+                    String name = "Case.Field" + random.nextInt(1000) + (random.nextInt(20) == 0 ? ".AVeryLongQualifiedNameThatIsOverTheLimit" : "");
+                    int form = random.nextInt(100) < malformedPercent ? 1 + random.nextInt(2) : 0;
+                    text.append(form == 1 ? "{" : "{{").append(name).append(form == 2 ? "}" : "}}").append(' ');
+                }
+            }
+            paragraphTexts[p] = text.toString();
+        }
+        scanner = new TagScanner();
+    }
+
+    @Benchmark
+    public int regex() {
+        int found = 0;
+        for (String text : paragraphTexts) {
+            Matcher matcher = TAG_PATTERN.matcher(text);
+            while (matcher.find()) {
+                String tag = matcher.group();
+                found += tag.length() - 4 > 50 ? 1_000_000 : 1;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int scanner() {
+        int found = 0;
+        for (String text : paragraphTexts) {
+            scanner.reset(text);
+            while (scanner.find()) {
+                found += scanner.isTooLong() ? 1_000_000 : 1;
+            }
+        }
+        return found;
+    }
+}
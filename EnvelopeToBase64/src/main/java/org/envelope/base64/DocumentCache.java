@@ -0,0 +1,336 @@
+package org.envelope.base64;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Downloaded documents on disk, so a document fetched again as its case moves through the workflow is revalidated
+// instead of downloaded: the response's ETag and Last-Modified are stored with the body, sent back as If-None-Match
+// and If-Modified-Since, and a 304 is answered from the file. Keyed by the SHA-256 of the URL and the auth token (the
+// token itself is never written), so a copy is only served to the credentials that fetched it. In ENVELOPE_CACHE_DIR
+// (default /tmp/envelope-cache), LRU by file time, bounded by ENVELOPE_CACHE_MB (default 128, 0 turns the cache off).
+// Entries are written to a temp file and moved into place atomically, invocations sharing the directory only ever
+// open complete entries, and an entry that is replaced or evicted while open stays readable until it is closed.
+final class DocumentCache {
+
+    static final DocumentCache SHARED = fromEnvironment();
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Temp files this old are left over from an invocation that died while writing
+    private static final Duration STALE_TEMP = Duration.ofHours(1);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long capacityBytes;
+
+    DocumentCache(Path directory, long capacityBytes) {
+        this.directory = directory;
+        this.capacityBytes = capacityBytes;
+    }
+
+    static DocumentCache fromEnvironment() {
+        String dir = System.getenv("ENVELOPE_CACHE_DIR");
+        String megabytes = System.getenv("ENVELOPE_CACHE_MB");
+        return new DocumentCache(Paths.get(dir == null || dir.isEmpty() ? "/tmp/envelope-cache" : dir),
+                (megabytes != null ? Long.parseLong(megabytes) : 128) * 1024 * 1024);
+    }
+
+    boolean enabled() {
+        return capacityBytes > 0;
+    }
+
+    // A stored document, open from the lookup on so that the validators sent and the body served are from one write
+    static final class Entry implements Closeable {
+        final String etag;
+        final String lastModified;
+        final InputStream body;
+        final long length;
+
+        private Entry(String etag, String lastModified, InputStream body, long length) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.length = length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    // The stored copy of the document, null when there is none (or it cannot be read)
+    Entry lookup(String url, String authToken) {
+        if (!enabled()) {
+            return null;
+        }
+        Path file = directory.resolve(key(url, authToken) + ENTRY_SUFFIX);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return null;
+        }
+        try {
+            // Header length, ETag and Last-Modified ("" when absent), then the body
+            DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            int headerLength = input.readInt();
+            String etag = input.readUTF();
+            String lastModified = input.readUTF();
+            long length = channel.size() - Integer.BYTES - headerLength;
+
+            // Recently used; the entry may have been replaced or evicted since it was opened, which is harmless
+            try {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            } catch (IOException ignored) {
+            }
+            return new Entry(etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, input, length);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    // The body as the caller reads it, copied into a new entry that replaces the stored one once the body has been
+    // read to the end. A body that is not read to the end (a failed request) leaves no entry, and a cache that cannot
+    // be written never fails the download.
+    InputStream store(String url, String authToken, String etag, String lastModified, InputStream body) {
+        if (!enabled() || (etag == null && lastModified == null)) {
+            return body;
+        }
+        String key = key(url, authToken);
+        Path temp = null;
+        OutputStream copy = null;
+        try {
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream headerOutput = new DataOutputStream(header);
+            headerOutput.writeUTF(etag != null ? etag : "");
+            headerOutput.writeUTF(lastModified != null ? lastModified : "");
+
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            copy = new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE);
+            DataOutputStream copyOutput = new DataOutputStream(copy);
+            copyOutput.writeInt(header.size());
+            header.writeTo(copyOutput);
+
+            return new CachingInputStream(body, copy, Integer.BYTES + header.size(), temp, directory.resolve(key + ENTRY_SUFFIX));
+        } catch (IOException e) {
+            if (copy != null) {
+                closeQuietly(copy);
+            }
+            deleteQuietly(temp);
+            return body;
+        }
+    }
+
+    // The copy is counted as it is written: a body that outgrows the cache is dropped there, not written to the end
+    private final class CachingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+        private final Path temp;
+        private final Path entry;
+        private long copiedBytes;
+        private boolean complete;
+        private boolean failed;
+        private boolean closed;
+
+        CachingInputStream(InputStream body, OutputStream copy, long headerBytes, Path temp, Path entry) {
+            super(body);
+            this.copy = copy;
+            this.copiedBytes = headerBytes;
+            this.temp = temp;
+            this.entry = entry;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else {
+                copy(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                complete = true;
+            } else {
+                copy(b, off, read);
+            }
+            return read;
+        }
+
+        // Skipped bytes would be missing from the copy
+        @Override
+        public long skip(long n) throws IOException {
+            fail();
+            return super.skip(n);
+        }
+
+        private void copy(byte[] b, int off, int len) {
+            if (failed) {
+                return;
+            }
+            copiedBytes += len;
+            if (copiedBytes > capacityBytes) {
+                fail();
+                return;
+            }
+            try {
+                copy.write(b, off, len);
+            } catch (IOException e) {
+                fail();
+            }
+        }
+
+        // No entry from this body; the temp file goes now rather than when the body is closed
+        private void fail() {
+            if (!failed) {
+                failed = true;
+                closeQuietly(copy);
+                deleteQuietly(temp);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                commit();
+            }
+        }
+
+        private void commit() {
+            try {
+                copy.close();
+                if (complete && !failed) {
+                    Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+                    evict(entry);
+                }
+            } catch (IOException ignored) {
+            } finally {
+                deleteQuietly(temp);
+            }
+        }
+    }
+
+    // Least recently used first until the entries fit, never the entry just written; stale temp files go as well
+    private void evict(Path keep) throws IOException {
+        List<Stored> entries = new ArrayList<>();
+        long sizeBytes = 0;
+        Instant staleBefore = Instant.now().minus(STALE_TEMP);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue; // evicted by another invocation meanwhile
+                }
+                String name = file.getFileName().toString();
+                if (name.endsWith(ENTRY_SUFFIX)) {
+                    entries.add(new Stored(file, attributes));
+                    sizeBytes += attributes.size();
+                } else if (name.endsWith(TEMP_SUFFIX) && attributes.lastModifiedTime().toInstant().isBefore(staleBefore)) {
+                    deleteQuietly(file);
+                }
+            }
+        }
+        if (sizeBytes <= capacityBytes) {
+            return;
+        }
+
+        entries.sort(Comparator.comparing(stored -> stored.used));
+        for (Stored stored : entries) {
+            if (sizeBytes <= capacityBytes) {
+                break;
+            }
+            if (!stored.file.equals(keep)) {
+                deleteQuietly(stored.file);
+                sizeBytes -= stored.size;
+            }
+        }
+    }
+
+    private static final class Stored {
+        final Path file;
+        final long size;
+        final FileTime used;
+
+        Stored(Path file, BasicFileAttributes attributes) {
+            this.file = file;
+            this.size = attributes.size();
+            this.used = attributes.lastModifiedTime();
+        }
+    }
+
+    private static String key(String url, String authToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(url.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (authToken != null) {
+                digest.update(authToken.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder(64);
+            for (byte b : digest.digest()) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package org.envelope.base64;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Batch mode: the documents of an envelope fetched concurrently instead of one invocation each, so the wall-clock
+// time is close to the slowest download rather than the sum of them. documents is a list of {url, authToken,
+// outputRef} (authToken defaults to the request's); the result is a JSON array in the same order, each element
+// {"base64": ...}, {"outputRef": ...} or {"error": ...}. A document that fails does not fail the others. An outputRef
+// must be in the document store and used once per batch; it is only published when its document was downloaded in
+// full within its time, a failed or timed out document leaves nothing under it.
+final class EnvelopeBatch {
+
+    static final String DOCUMENTS = "documents";
+
+    // Downloads in flight, ENVELOPE_CONCURRENCY or 32; the threads mostly wait on the network
+    private static final int CONCURRENCY = (int) setting("ENVELOPE_CONCURRENCY", 32);
+
+    // Per document, ENVELOPE_ITEM_TIMEOUT_MS or 120 s from the start of its download, retries included
+    private static final long ITEM_TIMEOUT_MS = setting("ENVELOPE_ITEM_TIMEOUT_MS", 120_000);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private EnvelopeBatch() {
+    }
+
+    static final class Document {
+        final String url;
+        final String authToken;
+        final String outputRef;
+
+        Document(String url, String authToken, String outputRef) {
+            this.url = url;
+            this.authToken = authToken;
+            this.outputRef = outputRef;
+        }
+    }
+
+    // The documents from a JSON array in the request (a List) or a JSON string holding the array
+    static List<Document> documents(Object documents, String defaultAuthToken) throws IOException {
+        List<Document> parsed = new ArrayList<>();
+        if (documents instanceof List) {
+            for (Object entry : (List<?>) documents) {
+                if (!(entry instanceof Map)) {
+                    throw new IllegalArgumentException("A document must be a JSON object, not " + entry);
+                }
+                Map<?, ?> fields = (Map<?, ?>) entry;
+                parsed.add(document((String) fields.get("url"), (String) fields.get("authToken"),
+                        (String) fields.get(DocumentStore.OUTPUT_REF), defaultAuthToken));
+            }
+            checkOutputRefs(parsed);
+            return parsed;
+        }
+
+        try (JsonParser parser = JSON_FACTORY.createParser((String) documents)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("documents must be a JSON array");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                String url = null;
+                String authToken = null;
+                String outputRef = null;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.getCurrentName();
+                    parser.nextToken();
+                    if (name.equals("url")) {
+                        url = parser.getValueAsString();
+                    } else if (name.equals("authToken")) {
+                        authToken = parser.getValueAsString();
+                    } else if (name.equals(DocumentStore.OUTPUT_REF)) {
+                        outputRef = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                parsed.add(document(url, authToken, outputRef, defaultAuthToken));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("A document must be a JSON object");
+            }
+        }
+        checkOutputRefs(parsed);
+        return parsed;
+    }
+
+    // Before anything is downloaded: every outputRef inside the store, and no two documents written to one file
+    private static void checkOutputRefs(List<Document> documents) throws IOException {
+        Set<Path> targets = new HashSet<>();
+        for (Document document : documents) {
+            if (document.outputRef != null && !targets.add(DocumentStore.resolve(document.outputRef))) {
+                throw new IllegalArgumentException("outputRef used by more than one document: " + document.outputRef);
+            }
+        }
+    }
+
+    private static Document document(String url, String authToken, String outputRef, String defaultAuthToken) {
+        if (url == null) {
+            throw new IllegalArgumentException("A document has no url");
+        }
+        return new Document(url, authToken != null ? authToken : defaultAuthToken, outputRef);
+    }
+
+    // Fetches every document and returns the JSON array of results, in the order of the documents
+    static String fetchAll(List<Document> documents, Context context) throws IOException, InterruptedException {
+        int threads = Math.max(1, Math.min(CONCURRENCY, documents.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService alarms = Executors.newSingleThreadScheduledExecutor();
+        try {
+            List<Future<String>> results = new ArrayList<>(documents.size());
+            for (Document document : documents) {
+                results.add(pool.submit(() -> fetch(document, alarms)));
+            }
+
+            StringWriter json = new StringWriter();
+            try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+                generator.writeStartArray();
+                for (int i = 0; i < documents.size(); i++) {
+                    generator.writeStartObject();
+                    try {
+                        generator.writeStringField(documents.get(i).outputRef != null ? DocumentStore.OUTPUT_REF : "base64",
+                                results.get(i).get());
+                    } catch (ExecutionException e) {
+                        // Some I/O errors (a refused connection) have no message, their class says what failed
+                        String message = e.getCause().getMessage() != null ? e.getCause().getMessage() : e.getCause().toString();
+                        if (context != null) {
+                            context.getLogger().log("Error: document " + i + ": " + message);
+                        }
+                        generator.writeStringField("error", message);
+                    }
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            return json.toString();
+        } finally {
+            pool.shutdownNow();
+            alarms.shutdownNow();
+        }
+    }
+
+    private static String fetch(Document document, ScheduledExecutorService alarms) throws Exception {
+        Deadline deadline = new Deadline(Thread.currentThread());
+        deadline.alarm = alarms.schedule(deadline, ITEM_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        try {
+            if (document.outputRef != null) {
+                try (EnvelopeClient.Download download = EnvelopeClient.get(document.url, document.authToken);
+                     DocumentStore.Output output = DocumentStore.create(document.outputRef)) {
+                    Main.copy(download.body, output.stream());
+                    deadline.publish(output);
+                    return document.outputRef;
+                }
+            }
+            return Main.fetchPdfAsBase64(document.url, document.authToken);
+        } catch (Exception e) {
+            if (deadline.expired()) {
+                throw new TimeoutException("Timed out after " + ITEM_TIMEOUT_MS + " ms");
+            }
+            throw e;
+        } finally {
+            deadline.finish();
+        }
+    }
+
+    // Interrupts the download once its time is up (the blocking socket reads, the retry backoff); after finish()
+    // it can no longer fire, and a late interrupt is cleared so it does not reach the pool thread's next document.
+    // An output is published under the lock, so a document is either published in time or not at all.
+    private static final class Deadline implements Runnable {
+        private final Thread worker;
+        private ScheduledFuture<?> alarm;
+        private boolean finished;
+        private boolean expired;
+
+        Deadline(Thread worker) {
+            this.worker = worker;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!finished) {
+                expired = true;
+                worker.interrupt();
+            }
+        }
+
+        synchronized boolean expired() {
+            return expired;
+        }
+
+        synchronized void publish(DocumentStore.Output output) throws IOException, TimeoutException {
+            if (expired) {
+                throw new TimeoutException("Timed out after " + ITEM_TIMEOUT_MS + " ms");
+            }
+            output.commit();
+            finished = true;
+        }
+
+        void finish() {
+            synchronized (this) {
+                finished = true;
+            }
+            alarm.cancel(false);
+            Thread.interrupted();
+        }
+    }
+
+    private static long setting(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
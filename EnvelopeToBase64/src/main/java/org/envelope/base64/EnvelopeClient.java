@@ -0,0 +1,173 @@
+package org.envelope.base64;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// Envelope downloads for the handlers. One HttpClient per container, built on first use and kept across warm
+// invocations: its pooled connections (HTTP/2 where the server offers it, else HTTP/1.1 keep-alive) skip the TCP and
+// TLS handshakes after the first call. gzip and deflate responses are decoded as they are read, and a GET that fails
+// with an I/O error or a 429/502/503/504 is retried after a jittered, doubling backoff. Documents seen before are
+// revalidated against DocumentCache.
+final class EnvelopeClient {
+
+    // HTTP_CONNECT_TIMEOUT_MS or 10 s to connect, HTTP_READ_TIMEOUT_MS or 60 s from the request to the response headers
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(setting("HTTP_CONNECT_TIMEOUT_MS", 10_000));
+    private static final Duration READ_TIMEOUT = Duration.ofMillis(setting("HTTP_READ_TIMEOUT_MS", 60_000));
+
+    // Retries after the first attempt, HTTP_RETRIES or 2; the backoff is up to HTTP_RETRY_BASE_MS or 200 ms, doubling
+    private static final int RETRIES = (int) setting("HTTP_RETRIES", 2);
+    private static final long RETRY_BASE_MS = setting("HTTP_RETRY_BASE_MS", 200);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private EnvelopeClient() {
+    }
+
+    // Built when the first download starts, an outputRef-only container never creates its selector thread at init
+    private static final class Shared {
+        static final HttpClient CLIENT = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    // Decoded response body; contentLength is the length of the decoded body when the server sent it, else -1
+    static final class Download implements Closeable {
+        final InputStream body;
+        final long contentLength;
+
+        private Download(InputStream body, long contentLength) {
+            this.body = body;
+            this.contentLength = contentLength;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    // GET with the auth header, the download is only returned once the response is 200 (or 304 for a cached copy)
+    static Download get(String url, String authToken) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .timeout(READ_TIMEOUT)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (authToken != null) {
+            builder.header("Authorization", authToken);
+        }
+
+        // A stored copy is revalidated instead of downloaded again
+        DocumentCache.Entry cached = DocumentCache.SHARED.lookup(url, authToken);
+        if (cached != null) {
+            if (cached.etag != null) {
+                builder.header("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                builder.header("If-Modified-Since", cached.lastModified);
+            }
+        }
+        HttpRequest request = builder.build();
+
+        boolean servedFromCache = false;
+        try {
+            for (int attempt = 0; ; attempt++) {
+                HttpResponse<InputStream> response;
+                try {
+                    response = Shared.CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                } catch (IOException e) {
+                    if (attempt >= RETRIES) {
+                        throw e;
+                    }
+                    backoff(attempt);
+                    continue;
+                }
+
+                int status = response.statusCode();
+                if (status == 304 && cached != null) {
+                    response.body().close();
+                    servedFromCache = true;
+                    return new Download(cached.body, cached.length);
+                }
+                if (status == 200) {
+                    return store(url, authToken, response, decode(response));
+                }
+                response.body().close();
+                if (attempt >= RETRIES || !retryable(status)) {
+                    throw new RuntimeException("Failed: HTTP error code: " + status);
+                }
+                backoff(attempt);
+            }
+        } finally {
+            if (cached != null && !servedFromCache) {
+                cached.close();
+            }
+        }
+    }
+
+    // The decoded body is stored as it is read, when the response can be revalidated later and may be stored
+    private static Download store(String url, String authToken, HttpResponse<InputStream> response, Download download) {
+        HttpHeaders headers = response.headers();
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        if (headers.allValues("Cache-Control").stream().anyMatch(value -> value.toLowerCase(Locale.ROOT).contains("no-store"))) {
+            return download;
+        }
+        return new Download(DocumentCache.SHARED.store(url, authToken, etag, lastModified, download.body), download.contentLength);
+    }
+
+    private static Download decode(HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "identity":
+                return new Download(body, response.headers().firstValueAsLong("Content-Length").orElse(-1));
+            case "gzip":
+            case "x-gzip":
+                return new Download(new GZIPInputStream(body, BUFFER_SIZE), -1);
+            case "deflate":
+                // The stream owns its Inflater, the native memory is released on close instead of by the GC
+                return new Download(new InflaterInputStream(body, new Inflater(), BUFFER_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inf.end();
+                        }
+                    }
+                }, -1);
+            default:
+                body.close();
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+
+    private static boolean retryable(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    // Full jitter: anywhere up to the doubled base, so retrying containers do not hit the server in step
+    private static void backoff(int attempt) throws InterruptedException {
+        long ceiling = RETRY_BASE_MS << Math.min(attempt, 16);
+        Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+    }
+
+    private static long setting(String name, long defaultValue) {
+        String value = System.getenv(name);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+}
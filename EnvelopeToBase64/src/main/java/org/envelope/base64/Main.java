@@ -4,19 +4,32 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Map;
 
-public class Main implements RequestHandler<Map<String, String>, String> {
+public class Main implements RequestHandler<Map<String, Object>, String> {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
 
     @Override
-    public String handleRequest(Map<String, String> input, Context context) {
+    public String handleRequest(Map<String, Object> input, Context context) {
         try {
-            String url = input.get("url"); // uri
-            String authToken = input.get("authToken"); // authToken
+            String url = (String) input.get("url"); // uri
+            String authToken = (String) input.get("authToken"); // authToken
+            // Optional batch mode: documents, a list of {url, authToken, outputRef} fetched concurrently instead of url
+            Object documents = input.get(EnvelopeBatch.DOCUMENTS);
+            if (documents != null) {
+                return EnvelopeBatch.fetchAll(EnvelopeBatch.documents(documents, authToken), context);
+            }
+            // Optional: write the PDF to a reference (store://key, or a path or file: URI inside the document store) and return that instead of base64
+            String outputRef = (String) input.get(DocumentStore.OUTPUT_REF);
+            if (outputRef != null) {
+                return fetchPdfToReference(url, authToken, outputRef);
+            }
             return fetchPdfAsBase64(url, authToken);
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
@@ -25,38 +38,42 @@ public class Main implements RequestHandler<Map<String, String>, String> {
     }
 
     public static String fetchPdfAsBase64(String urlString, String authToken) throws Exception {
-        // create URL object
-        URL url = new URL(urlString);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-
-        // request method GET
-        connection.setRequestMethod("GET");
-        // set auth header
-        connection.setRequestProperty("Authorization", authToken);
-
-        // check the response code
-        int responseCode = connection.getResponseCode();
-        if (responseCode != HttpURLConnection.HTTP_OK) {
-            throw new RuntimeException("Failed: HTTP error code: " + responseCode);
-        }
+        // encode the body as it is read, into a buffer sized for the whole base64 text up front
+        try (EnvelopeClient.Download download = EnvelopeClient.get(urlString, authToken)) {
+            ByteArrayOutputStream base64Output = new ByteArrayOutputStream(base64Length(download.contentLength));
+            try (OutputStream encoder = Base64.getEncoder().wrap(base64Output)) {
+                copy(download.body, encoder);
+            }
 
-        // read the input stream and convert to byte array
-        try (InputStream inputStream = connection.getInputStream();
-             ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) {
+            // base64 is ASCII, the String is built from the buffer directly (no trimmed byte array first)
+            return base64Output.toString(StandardCharsets.ISO_8859_1);
+        }
+    }
 
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, bytesRead);
-            }
+    public static String fetchPdfToReference(String urlString, String authToken, String outputRef) throws Exception {
+        // copy the body to the reference
+        try (EnvelopeClient.Download download = EnvelopeClient.get(urlString, authToken);
+             DocumentStore.Output outputStream = DocumentStore.create(outputRef)) {
+            copy(download.body, outputStream.stream());
+            outputStream.commit();
+            return outputRef;
+        }
+    }
 
-            // get the byte array from the output stream
-            byte[] pdfBytes = byteArrayOutputStream.toByteArray();
+    // Copies through one 64 KB buffer, large reads keep the number of socket reads and encoder calls low
+    static void copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = input.read(buffer)) != -1) {
+            output.write(buffer, 0, bytesRead);
+        }
+    }
 
-            // byte array to Base64
-            return Base64.getEncoder().encodeToString(pdfBytes);
-        } finally {
-            connection.disconnect(); // connection close
+    // Exact base64 length for a Content-Length; without one (chunked or compressed) or past what one array holds, the buffer grows
+    private static int base64Length(long contentLength) {
+        if (contentLength < 0 || contentLength > (Integer.MAX_VALUE - 8) / 4 * 3) {
+            return READ_BUFFER_SIZE;
         }
+        return (int) ((contentLength + 2) / 3 * 4);
     }
 }
@@ -0,0 +1,42 @@
+package org.envelope.base64;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Same request and response as Main, but the PDF is base64 encoded straight from the HTTP response into the
+// Lambda response, so neither the PDF bytes nor the base64 text are held on the heap. outputRef works as in Main.
+public class StreamHandler implements RequestStreamHandler {
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        EnvelopeClient.Download download;
+        try (StreamingRequest request = StreamingRequest.read(input, null)) {
+            // The documents array arrives as its JSON text
+            String documents = request.get(EnvelopeBatch.DOCUMENTS);
+            if (documents != null) {
+                StreamingRequest.writeString(output,
+                        EnvelopeBatch.fetchAll(EnvelopeBatch.documents(documents, request.get("authToken")), context));
+                return;
+            }
+            String outputRef = request.get(DocumentStore.OUTPUT_REF);
+            if (outputRef != null) {
+                StreamingRequest.writeString(output, Main.fetchPdfToReference(request.get("url"), request.get("authToken"), outputRef));
+                return;
+            }
+            download = EnvelopeClient.get(request.get("url"), request.get("authToken"));
+        } catch (Exception e) {
+            context.getLogger().log("Error: " + e.getMessage());
+            StreamingRequest.writeString(output, "Error processing request");
+            return;
+        }
+
+        // Once the response has started a failure can only fail the invocation, not return the error string
+        try (InputStream pdfInput = download.body) {
+            StreamingRequest.writeBase64(output, pdfInput);
+        }
+    }
+}
@@ -0,0 +1,736 @@
+package launchpad.pdf.extract;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Fast path for listing fields: reads the trailer and the cross-reference sections, then parses only the objects
+// reachable from /Root /AcroForm /Fields (fields, /Kids, widget /Rect and /P) and the page tree's dictionaries.
+// Page content streams, images and fonts are never read. The objects are PDFBox's COS types, so the listing code
+// runs unchanged on the partial document. Encrypted files, forms without fields, forms with NeedAppearances (PDFBox
+// then rebuilds appearances on reading the form), a reference the listing reads that has no cross-reference entry
+// (PDFBox repairs the xref or reads it as null) and anything this reader cannot parse get the full load instead.
+final class AcroFormReader {
+
+    private static final COSName W = COSName.getPDFName("W");
+    private static final COSName XREF_STM = COSName.getPDFName("XRefStm");
+
+    private final ByteBuffer pdf;
+    // Object number to file offset, or to {object stream, index} for objects in object streams
+    private final Map<Long, Long> offsets = new HashMap<>();
+    private final Map<Long, long[]> compressed = new HashMap<>();
+    private final Map<Long, COSObject> objects = new HashMap<>();
+    private final Set<Long> resolved = new HashSet<>();
+    private final Map<Long, ObjectStream> objectStreams = new HashMap<>();
+    private final Set<COSDictionary> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    private COSDictionary trailer;
+
+    private AcroFormReader(ByteBuffer pdf) {
+        this.pdf = pdf;
+    }
+
+    // Lists the fields of the file, from the partial document when possible, else from the full load
+    static String list(Path file, Function<PDDocument, String> list) throws IOException {
+        ByteBuffer mapped = null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        }
+        String fields = mapped != null ? tryList(mapped, list) : null;
+        if (fields != null) {
+            return fields;
+        }
+        try (PDDocument document = MemoryPolicy.load(file)) {
+            return list.apply(document);
+        }
+    }
+
+    static String list(byte[] pdf, Function<PDDocument, String> list) throws IOException {
+        String fields = tryList(ByteBuffer.wrap(pdf), list);
+        if (fields != null) {
+            return fields;
+        }
+        try (PDDocument document = MemoryPolicy.load(pdf)) {
+            return list.apply(document);
+        }
+    }
+
+    // null when the fast path does not apply or fails
+    private static String tryList(ByteBuffer pdf, Function<PDDocument, String> list) {
+        try {
+            PDDocument document = new AcroFormReader(pdf).read();
+            if (document == null) {
+                return null;
+            }
+            try (PDDocument partial = document) {
+                return list.apply(partial);
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private PDDocument read() throws IOException {
+        readCrossReferences(startXref());
+        if (trailer.containsKey(COSName.ENCRYPT)) {
+            return null;
+        }
+
+        COSBase root = trailer.getItem(COSName.ROOT);
+        COSDictionary catalog = dictionary(root);
+        COSDictionary acroForm = catalog != null ? dictionary(catalog.getItem(COSName.ACRO_FORM)) : null;
+        if (acroForm == null || resolve(acroForm.getItem(COSName.NEED_APPEARANCES)) == COSBoolean.TRUE) {
+            return null;
+        }
+        COSArray fields = array(acroForm.getItem(COSName.FIELDS));
+        if (fields == null || fields.size() == 0) {
+            return null;
+        }
+        for (COSBase field : fields) {
+            field(field);
+        }
+        pages(catalog.getItem(COSName.PAGES));
+
+        COSDocument document = new COSDocument();
+        COSDictionary partialTrailer = new COSDictionary();
+        partialTrailer.setItem(COSName.ROOT, root);
+        document.setTrailer(partialTrailer);
+        return new PDDocument(document);
+    }
+
+    // A field or widget: the entries PDFBox reads to build fields and their names, and its kids
+    private void field(COSBase base) throws IOException {
+        COSDictionary field = dictionary(base);
+        if (field == null || !visited.add(field)) {
+            return;
+        }
+        for (COSName key : new COSName[]{COSName.FT, COSName.T, COSName.FF, COSName.RECT}) {
+            value(field.getItem(key));
+        }
+        COSDictionary page = dictionary(field.getItem(COSName.P));
+        if (page != null) {
+            resolve(page.getItem(COSName.ANNOTS));
+        }
+        field(field.getItem(COSName.PARENT));
+        COSArray kids = array(field.getItem(COSName.KIDS));
+        if (kids != null) {
+            for (COSBase kid : kids) {
+                field(kid);
+            }
+        }
+    }
+
+    // Page tree nodes and pages, with their /Annots arrays; nothing below a page
+    private void pages(COSBase base) throws IOException {
+        COSDictionary node = dictionary(base);
+        if (node == null || !visited.add(node)) {
+            return;
+        }
+        value(node.getItem(COSName.TYPE));
+        value(node.getItem(COSName.COUNT));
+        resolve(node.getItem(COSName.ANNOTS));
+        COSArray kids = array(node.getItem(COSName.KIDS));
+        if (kids != null) {
+            for (COSBase kid : kids) {
+                pages(kid);
+            }
+        }
+    }
+
+    private COSDictionary dictionary(COSBase base) throws IOException {
+        COSBase object = resolve(base);
+        return object instanceof COSDictionary ? (COSDictionary) object : null;
+    }
+
+    private COSArray array(COSBase base) throws IOException {
+        COSBase object = resolve(base);
+        return object instanceof COSArray ? (COSArray) object : null;
+    }
+
+    // An entry the listing reads as a value, with the elements of an array (/Rect [1 0 R ...]) resolved as well
+    private void value(COSBase base) throws IOException {
+        COSBase object = resolve(base);
+        if (object instanceof COSArray) {
+            for (COSBase element : (COSArray) object) {
+                resolve(element);
+            }
+        }
+    }
+
+    // Parses the object behind a reference into the shared COSObject; direct objects are returned as they are
+    private COSBase resolve(COSBase base) throws IOException {
+        if (!(base instanceof COSObject)) {
+            return base;
+        }
+        COSObject reference = (COSObject) base;
+        long number = reference.getObjectNumber();
+        if (resolved.add(number)) {
+            Long offset = offsets.get(number);
+            long[] location = compressed.get(number);
+            if (offset != null) {
+                Parser parser = new Parser(pdf, Math.toIntExact(offset));
+                // Offsets off by a prefix or a broken xref are left to PDFBox, which repairs them
+                if (parser.objectHeader() != number) {
+                    throw new IOException("Object " + number + " is not at " + offset);
+                }
+                reference.setObject(parser.value());
+            } else if (location != null) {
+                reference.setObject(objectStream(location[0]).object((int) location[1]));
+            } else {
+                // Left unresolved it would read as null in the listing
+                throw new IOException("Object " + number + " has no cross-reference entry");
+            }
+        }
+        return reference.getObject();
+    }
+
+    // One COSObject per object number, so every reference to an object shares its parsed value
+    private COSObject reference(long number, int generation) throws IOException {
+        COSObject object = objects.get(number);
+        if (object == null) {
+            object = new COSObject(null);
+            object.setObjectNumber(number);
+            object.setGenerationNumber(generation);
+            objects.put(number, object);
+        }
+        return object;
+    }
+
+    // Cross-reference sections
+
+    private int startXref() throws IOException {
+        int from = Math.max(0, pdf.limit() - 1024);
+        byte[] tail = new byte[pdf.limit() - from];
+        pdf.duplicate().position(from).get(tail);
+        int at = new String(tail, StandardCharsets.ISO_8859_1).lastIndexOf("startxref");
+        if (at < 0) {
+            throw new IOException("No startxref");
+        }
+        Parser parser = new Parser(pdf, from + at + "startxref".length());
+        return Math.toIntExact(parser.integer());
+    }
+
+    // Newest section first; an object keeps the entry of the newest section that has it
+    private void readCrossReferences(long offset) throws IOException {
+        Set<Long> seen = new HashSet<>();
+        while (offset > 0 && seen.add(offset)) {
+            Parser parser = new Parser(pdf, Math.toIntExact(offset));
+            COSDictionary sectionTrailer;
+            if (parser.keyword("xref")) {
+                sectionTrailer = parser.xrefTable();
+                COSBase stream = sectionTrailer.getItem(XREF_STM);
+                if (stream instanceof COSNumber) {
+                    readXrefStream(new Parser(pdf, Math.toIntExact(((COSNumber) stream).longValue())));
+                }
+            } else {
+                sectionTrailer = readXrefStream(parser);
+            }
+            if (trailer == null) {
+                trailer = sectionTrailer;
+            }
+            COSBase previous = sectionTrailer.getItem(COSName.PREV);
+            offset = previous instanceof COSNumber ? ((COSNumber) previous).longValue() : 0;
+        }
+        if (trailer == null) {
+            throw new IOException("No trailer");
+        }
+    }
+
+    private COSDictionary readXrefStream(Parser parser) throws IOException {
+        parser.objectHeader();
+        COSDictionary dictionary = (COSDictionary) parser.value();
+        byte[] data = parser.streamData(dictionary);
+
+        COSArray widths = (COSArray) dictionary.getDictionaryObject(W);
+        int[] w = {((COSNumber) widths.getObject(0)).intValue(), ((COSNumber) widths.getObject(1)).intValue(),
+                ((COSNumber) widths.getObject(2)).intValue()};
+        COSArray index = (COSArray) dictionary.getDictionaryObject(COSName.INDEX);
+        if (index == null) {
+            index = new COSArray();
+            index.add(COSInteger.ZERO);
+            index.add(dictionary.getDictionaryObject(COSName.SIZE));
+        }
+
+        int position = 0;
+        for (int i = 0; i + 1 < index.size(); i += 2) {
+            long first = ((COSNumber) index.getObject(i)).longValue();
+            long count = ((COSNumber) index.getObject(i + 1)).longValue();
+            for (long number = first; number < first + count && position + w[0] + w[1] + w[2] <= data.length; number++) {
+                long type = w[0] == 0 ? 1 : field(data, position, w[0]);
+                long second = field(data, position + w[0], w[1]);
+                long third = field(data, position + w[0] + w[1], w[2]);
+                position += w[0] + w[1] + w[2];
+                if (type == 1) {
+                    addOffset(number, second);
+                } else if (type == 2 && !offsets.containsKey(number)) {
+                    compressed.putIfAbsent(number, new long[]{second, third});
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    private void addOffset(long number, long offset) {
+        if (!compressed.containsKey(number)) {
+            offsets.putIfAbsent(number, offset);
+        }
+    }
+
+    private static long field(byte[] data, int position, int width) {
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (data[position + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private ObjectStream objectStream(long number) throws IOException {
+        ObjectStream stream = objectStreams.get(number);
+        if (stream == null) {
+            Long offset = offsets.get(number);
+            if (offset == null) {
+                throw new IOException("Object stream " + number + " not found");
+            }
+            Parser parser = new Parser(pdf, Math.toIntExact(offset));
+            if (parser.objectHeader() != number) {
+                throw new IOException("Object stream " + number + " is not at " + offset);
+            }
+            COSDictionary dictionary = (COSDictionary) parser.value();
+            stream = new ObjectStream(dictionary, parser.streamData(dictionary));
+            objectStreams.put(number, stream);
+        }
+        return stream;
+    }
+
+    // The objects of an object stream: a header of object number and offset pairs, then the objects from /First
+    private final class ObjectStream {
+        private final ByteBuffer data;
+        private final int first;
+        private final int[] offsets;
+
+        ObjectStream(COSDictionary dictionary, byte[] data) throws IOException {
+            this.data = ByteBuffer.wrap(data);
+            this.first = ((COSNumber) dictionary.getDictionaryObject(COSName.FIRST)).intValue();
+            int count = ((COSNumber) dictionary.getDictionaryObject(COSName.N)).intValue();
+            this.offsets = new int[count];
+            Parser header = new Parser(this.data, 0);
+            for (int i = 0; i < count; i++) {
+                header.integer();
+                offsets[i] = Math.toIntExact(header.integer());
+            }
+        }
+
+        COSBase object(int index) throws IOException {
+            return new Parser(data, first + offsets[index]).value();
+        }
+    }
+
+    // Tokens and objects, on the file or on a decoded object stream
+
+    private final class Parser {
+        private final ByteBuffer buffer;
+        private int position;
+
+        Parser(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        // "12 0 obj", returns the object number
+        long objectHeader() throws IOException {
+            long number = integer();
+            integer();
+            if (!keyword("obj")) {
+                throw new IOException("Expected obj at " + position);
+            }
+            return number;
+        }
+
+        // The subsections of a classic table, up to and including the trailer dictionary
+        COSDictionary xrefTable() throws IOException {
+            while (!keyword("trailer")) {
+                long first = integer();
+                long count = integer();
+                for (long number = first; number < first + count; number++) {
+                    long offset = integer();
+                    integer();
+                    skipSpace();
+                    byte type = next();
+                    if (type == 'n' && offset > 0) {
+                        addOffset(number, offset);
+                    }
+                }
+            }
+            COSBase dictionary = value();
+            if (!(dictionary instanceof COSDictionary)) {
+                throw new IOException("Expected trailer dictionary at " + position);
+            }
+            return (COSDictionary) dictionary;
+        }
+
+        // The decoded data of the stream whose dictionary was just read
+        byte[] streamData(COSDictionary dictionary) throws IOException {
+            if (!keyword("stream")) {
+                throw new IOException("Expected stream at " + position);
+            }
+            if (peek() == '\r') {
+                position++;
+            }
+            if (peek() == '\n') {
+                position++;
+            }
+            COSBase length = resolve(dictionary.getItem(COSName.LENGTH));
+            if (!(length instanceof COSNumber)) {
+                throw new IOException("Stream without length");
+            }
+            byte[] raw = new byte[((COSNumber) length).intValue()];
+            buffer.duplicate().position(position).get(raw);
+            return decode(raw, dictionary);
+        }
+
+        COSBase value() throws IOException {
+            skipSpace();
+            byte c = peek();
+            switch (c) {
+                case '<':
+                    if (peek(1) == '<') {
+                        return dictionary();
+                    }
+                    return hexString();
+                case '[':
+                    return array();
+                case '(':
+                    return literalString();
+                case '/':
+                    return name();
+                default:
+                    if (c == '+' || c == '-' || c == '.' || (c >= '0' && c <= '9')) {
+                        return numberOrReference();
+                    }
+                    String keyword = token();
+                    if (keyword.equals("true")) {
+                        return COSBoolean.TRUE;
+                    }
+                    if (keyword.equals("false")) {
+                        return COSBoolean.FALSE;
+                    }
+                    if (keyword.equals("null")) {
+                        return COSNull.NULL;
+                    }
+                    throw new IOException("Unexpected " + keyword + " at " + position);
+            }
+        }
+
+        private COSDictionary dictionary() throws IOException {
+            position += 2;
+            COSDictionary dictionary = new COSDictionary();
+            while (true) {
+                skipSpace();
+                if (peek() == '>' && peek(1) == '>') {
+                    position += 2;
+                    return dictionary;
+                }
+                COSBase key = value();
+                if (!(key instanceof COSName)) {
+                    throw new IOException("Expected name at " + position);
+                }
+                dictionary.setItem((COSName) key, value());
+            }
+        }
+
+        private COSArray array() throws IOException {
+            position++;
+            COSArray array = new COSArray();
+            while (true) {
+                skipSpace();
+                if (peek() == ']') {
+                    position++;
+                    return array;
+                }
+                array.add(value());
+            }
+        }
+
+        private COSName name() throws IOException {
+            position++;
+            ByteArrayOutputStream name = new ByteArrayOutputStream();
+            while (position < buffer.limit() && !isSpace(peek()) && !isDelimiter(peek())) {
+                byte c = next();
+                if (c == '#' && position + 1 < buffer.limit()) {
+                    c = (byte) Integer.parseInt(new String(new byte[]{next(), next()}, StandardCharsets.ISO_8859_1), 16);
+                }
+                name.write(c);
+            }
+            byte[] bytes = name.toByteArray();
+            try {
+                return COSName.getPDFName(StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(bytes)).toString());
+            } catch (CharacterCodingException e) {
+                return COSName.getPDFName(new String(bytes, StandardCharsets.ISO_8859_1));
+            }
+        }
+
+        private COSString literalString() throws IOException {
+            position++;
+            ByteArrayOutputStream string = new ByteArrayOutputStream();
+            int depth = 1;
+            while (true) {
+                byte c = next();
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth == 0) {
+                    return new COSString(string.toByteArray());
+                } else if (c == '\\') {
+                    c = next();
+                    switch (c) {
+                        case 'n': c = '\n'; break;
+                        case 'r': c = '\r'; break;
+                        case 't': c = '\t'; break;
+                        case 'b': c = '\b'; break;
+                        case 'f': c = '\f'; break;
+                        case '\r':
+                            // Line continuation
+                            if (peek() == '\n') {
+                                position++;
+                            }
+                            continue;
+                        case '\n':
+                            continue;
+                        default:
+                            if (c >= '0' && c <= '7') {
+                                int octal = c - '0';
+                                for (int i = 0; i < 2 && peek() >= '0' && peek() <= '7'; i++) {
+                                    octal = octal * 8 + (next() - '0');
+                                }
+                                c = (byte) octal;
+                            }
+                    }
+                }
+                string.write(c);
+            }
+        }
+
+        private COSString hexString() throws IOException {
+            position++;
+            StringBuilder hex = new StringBuilder();
+            byte c;
+            while ((c = next()) != '>') {
+                if (!isSpace(c)) {
+                    hex.append((char) c);
+                }
+            }
+            if (hex.length() % 2 == 1) {
+                hex.append('0');
+            }
+            return COSString.parseHex(hex.toString());
+        }
+
+        // "12", "-3.5", or the reference "12 0 R"
+        private COSBase numberOrReference() throws IOException {
+            String number = token();
+            if (number.indexOf('.') < 0 && !number.startsWith("+") && !number.startsWith("-")) {
+                int after = position;
+                skipSpace();
+                if (position < buffer.limit() && Character.isDigit(peek())) {
+                    String generation = token();
+                    skipSpace();
+                    if (generation.chars().allMatch(Character::isDigit) && position < buffer.limit() && peek() == 'R'
+                            && (position + 1 >= buffer.limit() || isSpace(peek(1)) || isDelimiter(peek(1)))) {
+                        position++;
+                        return reference(Long.parseLong(number), Integer.parseInt(generation));
+                    }
+                }
+                position = after;
+            }
+            return COSNumber.get(number);
+        }
+
+        long integer() throws IOException {
+            skipSpace();
+            String token = token();
+            try {
+                return Long.parseLong(token);
+            } catch (NumberFormatException e) {
+                throw new IOException("Expected integer, not " + token + " at " + position);
+            }
+        }
+
+        // Consumes the keyword when it is next
+        boolean keyword(String keyword) throws IOException {
+            skipSpace();
+            int start = position;
+            if (token().equals(keyword)) {
+                return true;
+            }
+            position = start;
+            return false;
+        }
+
+        private String token() throws IOException {
+            int start = position;
+            while (position < buffer.limit() && !isSpace(peek()) && !isDelimiter(peek())) {
+                position++;
+            }
+            if (start == position) {
+                throw new IOException("Expected token at " + position);
+            }
+            byte[] token = new byte[position - start];
+            buffer.duplicate().position(start).get(token);
+            return new String(token, StandardCharsets.ISO_8859_1);
+        }
+
+        private void skipSpace() {
+            while (position < buffer.limit()) {
+                byte c = peek();
+                if (c == '%') {
+                    while (position < buffer.limit() && peek() != '\n' && peek() != '\r') {
+                        position++;
+                    }
+                } else if (isSpace(c)) {
+                    position++;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private byte peek() {
+            return buffer.get(position);
+        }
+
+        private byte peek(int ahead) {
+            return position + ahead < buffer.limit() ? buffer.get(position + ahead) : 0;
+        }
+
+        private byte next() throws IOException {
+            if (position >= buffer.limit()) {
+                throw new IOException("Unexpected end of data");
+            }
+            return buffer.get(position++);
+        }
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0;
+    }
+
+    private static boolean isDelimiter(byte c) {
+        return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']' || c == '{' || c == '}'
+                || c == '/' || c == '%';
+    }
+
+    // FlateDecode with an optional PNG predictor, the only filter cross-reference and object streams need in practice
+    private byte[] decode(byte[] raw, COSDictionary dictionary) throws IOException {
+        COSBase filter = resolve(dictionary.getItem(COSName.FILTER));
+        if (filter instanceof COSArray && ((COSArray) filter).size() == 1) {
+            filter = ((COSArray) filter).getObject(0);
+        }
+        if (filter == null) {
+            return raw;
+        }
+        if (filter != COSName.FLATE_DECODE) {
+            throw new IOException("Unsupported filter " + filter);
+        }
+
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream(raw.length * 4);
+        try {
+            inflater.setInput(raw);
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        COSBase parameters = resolve(dictionary.getItem(COSName.DECODE_PARMS));
+        if (parameters instanceof COSArray && ((COSArray) parameters).size() == 1) {
+            parameters = ((COSArray) parameters).getObject(0);
+        }
+        if (!(parameters instanceof COSDictionary)) {
+            return inflated.toByteArray();
+        }
+        int predictor = ((COSDictionary) parameters).getInt(COSName.PREDICTOR, 1);
+        if (predictor == 1) {
+            return inflated.toByteArray();
+        }
+        if (predictor < 10) {
+            throw new IOException("Unsupported predictor " + predictor);
+        }
+        int columns = ((COSDictionary) parameters).getInt(COSName.COLUMNS, 1);
+        int colors = ((COSDictionary) parameters).getInt(COSName.COLORS, 1);
+        int bits = ((COSDictionary) parameters).getInt(COSName.BITS_PER_COMPONENT, 8);
+        return unpredict(inflated.toByteArray(), (columns * colors * bits + 7) / 8, (colors * bits + 7) / 8);
+    }
+
+    // PNG predictors: every row starts with its filter type
+    private static byte[] unpredict(byte[] data, int rowLength, int pixelLength) {
+        int rows = data.length / (rowLength + 1);
+        byte[] output = new byte[rows * rowLength];
+        for (int row = 0; row < rows; row++) {
+            int type = data[row * (rowLength + 1)];
+            int in = row * (rowLength + 1) + 1;
+            int out = row * rowLength;
+            for (int i = 0; i < rowLength; i++) {
+                int left = i >= pixelLength ? output[out + i - pixelLength] & 0xFF : 0;
+                int up = row > 0 ? output[out - rowLength + i] & 0xFF : 0;
+                int upLeft = row > 0 && i >= pixelLength ? output[out - rowLength + i - pixelLength] & 0xFF : 0;
+                int value = data[in + i] & 0xFF;
+                switch (type) {
+                    case 1: value += left; break;
+                    case 2: value += up; break;
+                    case 3: value += (left + up) / 2; break;
+                    case 4: value += paeth(left, up, upLeft); break;
+                    default: break;
+                }
+                output[out + i] = (byte) value;
+            }
+        }
+        return output;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int estimate = left + up - upLeft;
+        int toLeft = Math.abs(estimate - left);
+        int toUp = Math.abs(estimate - up);
+        int toUpLeft = Math.abs(estimate - upLeft);
+        if (toLeft <= toUp && toLeft <= toUpLeft) {
+            return left;
+        }
+        return toUp <= toUpLeft ? up : upLeft;
+    }
+}
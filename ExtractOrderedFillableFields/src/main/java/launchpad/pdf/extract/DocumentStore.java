@@ -0,0 +1,210 @@
+package launchpad.pdf.extract;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+// Documents passed by reference instead of inline base64: store://key, or a path or file: URI inside the store.
+// Every reference is resolved under the store root and rejected if it leads out of it, so a request can neither
+// read nor overwrite other files of the function. Paths anywhere on disk only with DOCUMENT_REFS_ANY_PATH=true.
+// The store is an ObjectStore; LocalDirectoryStore under DOCUMENT_STORE_DIR is a local stand-in for a bucket.
+final class DocumentStore {
+
+    // Request fields naming the input document and where to write the result
+    static final String DOCUMENT_REF = "documentRef";
+    static final String OUTPUT_REF = "outputRef";
+
+    static final String STORE_SCHEME = "store://";
+    private static final String STORE_DIR_ENV = "DOCUMENT_STORE_DIR";
+    private static final String DEFAULT_STORE_DIR = "/tmp/document-store";
+    private static final String ANY_PATH_ENV = "DOCUMENT_REFS_ANY_PATH";
+
+    private static final ObjectStore STORE = new LocalDirectoryStore(storeRoot());
+    private static final boolean ANY_PATH = Boolean.parseBoolean(System.getenv(ANY_PATH_ENV));
+
+    private DocumentStore() {
+    }
+
+    // Where referenced documents are kept, by key (a relative path)
+    interface ObjectStore {
+
+        // A local file with the document, for the readers that need random access (PDFBox)
+        Path file(String key) throws IOException;
+
+        InputStream open(String key) throws IOException;
+
+        // The document is only visible under key once the output is committed
+        Output create(String key) throws IOException;
+    }
+
+    // Keys are files under root; a key that normalizes (or links) to a file outside root is rejected
+    static final class LocalDirectoryStore implements ObjectStore {
+        private final Path root;
+
+        LocalDirectoryStore(Path root) {
+            this.root = root;
+        }
+
+        @Override
+        public Path file(String key) throws IOException {
+            Path path = root.resolve(key).normalize();
+            if (!path.startsWith(root) || path.equals(root)) {
+                throw new IllegalArgumentException("Reference outside the document store: " + key);
+            }
+            // A symbolic link inside the store must not lead out of it either
+            Path existing = path;
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing != null && existing.startsWith(root) && Files.exists(root)
+                    && !existing.toRealPath().startsWith(root.toRealPath())) {
+                throw new IllegalArgumentException("Reference outside the document store: " + key);
+            }
+            return path;
+        }
+
+        @Override
+        public InputStream open(String key) throws IOException {
+            return new BufferedInputStream(Files.newInputStream(file(key)), 64 * 1024);
+        }
+
+        @Override
+        public Output create(String key) throws IOException {
+            return Output.create(file(key));
+        }
+    }
+
+    // A document being written, to a temp file next to the target that commit() moves into place. Closed without a
+    // commit (the handler failed, or was interrupted) the temp file is deleted, no truncated document is left at the
+    // target. Writers get stream(), which they may close themselves (PDFBox does).
+    static final class Output implements Closeable {
+        private final OutputStream stream;
+        private final Path temp;
+        private final Path target;
+        private boolean done;
+
+        private Output(OutputStream stream, Path temp, Path target) {
+            this.stream = stream;
+            this.temp = temp;
+            this.target = target;
+        }
+
+        static Output create(Path target) throws IOException {
+            Path parent = target.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, "." + target.getFileName(), ".part");
+            try {
+                return new Output(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024), temp, target);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+        }
+
+        OutputStream stream() {
+            return stream;
+        }
+
+        // Publishes the document; the stream is closed
+        void commit() throws IOException {
+            if (done) {
+                throw new IOException("Output already committed or discarded");
+            }
+            done = true;
+            try {
+                stream.close();
+                if (temp != null) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException | RuntimeException e) {
+                discard();
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+            try {
+                stream.close();
+            } finally {
+                discard();
+            }
+        }
+
+        private void discard() throws IOException {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    // The local file of a reference
+    static Path resolve(String reference) throws IOException {
+        if (ANY_PATH && !reference(reference).startsWith(STORE_SCHEME)) {
+            return rawPath(reference);
+        }
+        return STORE.file(key(reference));
+    }
+
+    static InputStream open(String reference) throws IOException {
+        if (ANY_PATH && !reference(reference).startsWith(STORE_SCHEME)) {
+            return new BufferedInputStream(Files.newInputStream(rawPath(reference)), 64 * 1024);
+        }
+        return STORE.open(key(reference));
+    }
+
+    static Output create(String reference) throws IOException {
+        if (ANY_PATH && !reference(reference).startsWith(STORE_SCHEME)) {
+            return Output.create(rawPath(reference));
+        }
+        return STORE.create(key(reference));
+    }
+
+    // Any other destination of a result (the response buffer) as an Output, commit() and close() only close it
+    static Output wrap(OutputStream stream) {
+        return new Output(stream, null, null);
+    }
+
+    // The store key of a reference: store://key as is, a path or file: URI relative to the store root
+    private static String key(String reference) {
+        reference = reference(reference);
+        if (reference.startsWith(STORE_SCHEME)) {
+            return reference.substring(STORE_SCHEME.length());
+        }
+        Path path = rawPath(reference);
+        Path root = storeRoot();
+        Path normalized = root.resolve(path).normalize();
+        if (!normalized.startsWith(root)) {
+            throw new IllegalArgumentException("Reference outside the document store: " + reference);
+        }
+        return root.relativize(normalized).toString();
+    }
+
+    private static Path rawPath(String reference) {
+        return reference.startsWith("file:") ? Paths.get(URI.create(reference)) : Paths.get(reference);
+    }
+
+    private static String reference(String reference) {
+        if (reference == null || reference.isEmpty()) {
+            throw new IllegalArgumentException("Empty document reference");
+        }
+        return reference;
+    }
+
+    private static Path storeRoot() {
+        String dir = System.getenv(STORE_DIR_ENV);
+        return Paths.get(dir == null || dir.isEmpty() ? DEFAULT_STORE_DIR : dir).toAbsolutePath().normalize();
+    }
+}
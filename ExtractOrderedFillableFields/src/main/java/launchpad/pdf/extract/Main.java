@@ -2,17 +2,11 @@ package launchpad.pdf.extract;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.common.PDRectangle;
-import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
-import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -21,23 +15,30 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
     @Override
     public String handleRequest(Map<String, Object> input, Context context) {
         try {
+            // Or a reference (store://key, or a path or file: URI inside the document store), PDFBox then reads the file from disk
+            String documentRef = (String) input.get(DocumentStore.DOCUMENT_REF);
+            if (documentRef != null) {
+                // Only the form's objects are parsed when AcroFormReader can, else the whole document
+                return AcroFormReader.list(DocumentStore.resolve(documentRef), this::listFormFields);
+            }
+
             // Input base64
             String base64Pdf = (String) input.get("base64Pdf");
             if (base64Pdf == null || base64Pdf.isEmpty()) {
                 return "No base64 PDF data provided.";
             }
 
-            // Decode base64
-            byte[] pdfBytes = Base64.getDecoder().decode(base64Pdf);
-
-            // Extract form field names from the PDF
-            List<String> fieldNames = extractFormFieldNames(pdfBytes);
-
-            // Reverse the order of fields
-            Collections.reverse(fieldNames);
-
-            // Return the fields sepparate dby comma
-            return String.join(",", fieldNames);
+            // Read the form's objects, or load the whole PDF; a large PDF is decoded into a temp file, see MemoryPolicy
+            if (MemoryPolicy.inMemory(base64Pdf)) {
+                byte[] pdfBytes = Base64.getDecoder().decode(base64Pdf);
+                return AcroFormReader.list(pdfBytes, this::listFormFields);
+            }
+            Path pdfFile = MemoryPolicy.decode(base64Pdf);
+            try {
+                return AcroFormReader.list(pdfFile, this::listFormFields);
+            } finally {
+                Files.deleteIfExists(pdfFile);
+            }
 
         } catch (IOException e) {
             context.getLogger().log("Error processing PDF: " + e.getMessage());
@@ -45,49 +46,12 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
         }
     }
 
-    private List<String> extractFormFieldNames(byte[] pdfBytes) throws IOException {
-        List<FieldWithPosition> fieldsWithPosition = new ArrayList<>();
-
-        // Load PDF from byte array
-        PDDocument document = PDDocument.load(new ByteArrayInputStream(pdfBytes));
-
-        // Access the AcroForm (form) of the PDF
-        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
-
-        if (acroForm != null) {
-            // Iterate through fields and capture their positions
-            Iterator<PDField> fieldIterator = acroForm.getFieldIterator();
-            while (fieldIterator.hasNext()) {
-                PDField field = fieldIterator.next();
-                PDRectangle position = field.getWidgets().get(0).getRectangle();
-                fieldsWithPosition.add(new FieldWithPosition(field.getPartialName(), position));
-            }
-
-            // Sort fields first by vertical position, then by horizontal position
-            fieldsWithPosition.sort(Comparator
-                    .comparingDouble((FieldWithPosition f) -> f.position.getLowerLeftY()) // Sort by vertical position (top to bottom)
-                    .thenComparingDouble(f -> f.position.getLowerLeftX())); // Then sort by horizontal position (left to right)
-        }
-
-        // Extract sorted fields
-        List<String> sortedFieldNames = new ArrayList<>();
-        for (FieldWithPosition fieldWithPosition : fieldsWithPosition) {
-            sortedFieldNames.add(fieldWithPosition.fieldName);
-        }
-
-        // Close
-        document.close();
-
-        return sortedFieldNames;
-    }
-
-    private static class FieldWithPosition {
-        String fieldName;
-        PDRectangle position;
+    // Comma-separated field names in reading order, shared by the String and the stream handler
+    String listFormFields(PDDocument document) {
+        // Page by page, top to bottom and left to right, each field once
+        List<String> fieldNames = ReadingOrder.fieldNames(document);
 
-        FieldWithPosition(String fieldName, PDRectangle position) {
-            this.fieldName = fieldName;
-            this.position = position;
-        }
+        // Return the fields sepparate dby comma
+        return String.join(",", fieldNames);
     }
-}
\ No newline at end of file
+}
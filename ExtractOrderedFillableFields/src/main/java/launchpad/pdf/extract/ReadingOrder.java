@@ -0,0 +1,192 @@
+package launchpad.pdf.extract;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTerminalField;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Form fields in reading order: page by page, lines top to bottom, left to right within a line. Every widget is
+// read once into primitive arrays (page, vertical center, left edge, field), then ordered with one sort of packed
+// long keys; widgets whose centers are within LINE_TOLERANCE points of a line's first widget join that line, and
+// the lines are sorted by their left edges. A field with several widgets is listed at its first one.
+final class ReadingOrder {
+
+    // Points, LINE_TOLERANCE or 4; fields of one row rarely differ by more, lines are rarely closer
+    private static final float LINE_TOLERANCE = lineTolerance();
+
+    // Key layout, high to low: page, position, widget index. Positions are in quarter points, offset so that
+    // negative coordinates stay positive, and the vertical one is inverted so that the top of the page sorts first.
+    private static final int INDEX_BITS = 22;
+    private static final int POSITION_BITS = 26;
+    private static final int PAGE_BITS = 63 - POSITION_BITS - INDEX_BITS;
+    private static final long POSITION_OFFSET = 1L << (POSITION_BITS - 1);
+    private static final long POSITION_MAX = (1L << POSITION_BITS) - 1;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private int widgets;
+    private int[] page = new int[64];
+    private float[] centerY = new float[64];
+    private float[] left = new float[64];
+    private int[] field = new int[64];
+
+    private ReadingOrder() {
+    }
+
+    // Fully qualified names of the terminal fields
+    static List<String> fieldNames(PDDocument document) {
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+        if (acroForm == null) {
+            return new ArrayList<>();
+        }
+
+        // Which page every annotation is on, from the pages' /Annots; a widget's own /P is only the fallback
+        Map<COSDictionary, Integer> annotationPages = new IdentityHashMap<>();
+        Map<COSDictionary, Integer> pages = new IdentityHashMap<>();
+        int pageCount = 0;
+        for (PDPage page : document.getPages()) {
+            pages.put(page.getCOSObject(), pageCount);
+            COSBase annotations = page.getCOSObject().getDictionaryObject(COSName.ANNOTS);
+            if (annotations instanceof COSArray) {
+                for (COSBase annotation : (COSArray) annotations) {
+                    COSBase dictionary = annotation instanceof COSObject ? ((COSObject) annotation).getObject() : annotation;
+                    if (dictionary instanceof COSDictionary) {
+                        annotationPages.put((COSDictionary) dictionary, pageCount);
+                    }
+                }
+            }
+            pageCount++;
+        }
+
+        ReadingOrder order = new ReadingOrder();
+        List<String> names = new ArrayList<>();
+        for (PDField field : acroForm.getFieldTree()) {
+            if (!(field instanceof PDTerminalField)) {
+                continue;
+            }
+            COSDictionary fieldDictionary = field.getCOSObject();
+            COSBase kids = fieldDictionary.getDictionaryObject(COSName.KIDS);
+            if (kids instanceof COSArray) {
+                for (COSBase kid : (COSArray) kids) {
+                    COSBase widget = kid instanceof COSObject ? ((COSObject) kid).getObject() : kid;
+                    if (widget instanceof COSDictionary) {
+                        order.add((COSDictionary) widget, names.size(), annotationPages, pages, pageCount);
+                    }
+                }
+            } else {
+                // The field and its only widget share the dictionary
+                order.add(fieldDictionary, names.size(), annotationPages, pages, pageCount);
+            }
+            names.add(field.getFullyQualifiedName());
+        }
+        return order.sortedNames(names);
+    }
+
+    private void add(COSDictionary widget, int fieldIndex, Map<COSDictionary, Integer> annotationPages,
+                     Map<COSDictionary, Integer> pages, int pageCount) {
+        if (widgets == page.length) {
+            int capacity = widgets * 2;
+            page = Arrays.copyOf(page, capacity);
+            centerY = Arrays.copyOf(centerY, capacity);
+            left = Arrays.copyOf(left, capacity);
+            field = Arrays.copyOf(field, capacity);
+        }
+
+        Integer pageIndex = annotationPages.get(widget);
+        if (pageIndex == null) {
+            COSBase pageReference = widget.getDictionaryObject(COSName.P);
+            pageIndex = pageReference instanceof COSDictionary ? pages.get(pageReference) : null;
+        }
+        // Widgets on no page go after all pages
+        page[widgets] = pageIndex != null ? pageIndex : pageCount;
+
+        // /Rect corners can come in any order
+        COSBase rect = widget.getDictionaryObject(COSName.RECT);
+        if (rect instanceof COSArray && ((COSArray) rect).size() >= 4) {
+            COSArray corners = (COSArray) rect;
+            float x1 = number(corners.getObject(0));
+            float y1 = number(corners.getObject(1));
+            float x2 = number(corners.getObject(2));
+            float y2 = number(corners.getObject(3));
+            centerY[widgets] = (y1 + y2) / 2;
+            left[widgets] = Math.min(x1, x2);
+        }
+        field[widgets] = fieldIndex;
+        widgets++;
+    }
+
+    private List<String> sortedNames(List<String> names) {
+        if (widgets > INDEX_MASK) {
+            throw new IllegalArgumentException("Too many widgets to order: " + widgets);
+        }
+
+        // Pages, then top to bottom
+        long[] keys = new long[widgets];
+        for (int w = 0; w < widgets; w++) {
+            long top = POSITION_MAX - position(centerY[w]);
+            keys[w] = (Math.min(page[w], (1L << PAGE_BITS) - 1) << (POSITION_BITS + INDEX_BITS)) | (top << INDEX_BITS) | w;
+        }
+        Arrays.sort(keys);
+
+        // Lines, each sorted left to right in place
+        int lineStart = 0;
+        for (int k = 1; k <= widgets; k++) {
+            if (k == widgets || !sameLine((int) (keys[lineStart] & INDEX_MASK), (int) (keys[k] & INDEX_MASK))) {
+                for (int l = lineStart; l < k; l++) {
+                    int w = (int) (keys[l] & INDEX_MASK);
+                    keys[l] = (position(left[w]) << INDEX_BITS) | w;
+                }
+                Arrays.sort(keys, lineStart, k);
+                lineStart = k;
+            }
+        }
+
+        // First widget of each field
+        boolean[] listed = new boolean[names.size()];
+        List<String> sorted = new ArrayList<>(names.size());
+        for (long key : keys) {
+            int f = field[(int) (key & INDEX_MASK)];
+            if (!listed[f]) {
+                listed[f] = true;
+                sorted.add(names.get(f));
+            }
+        }
+        // Fields without widgets keep their tree order at the end
+        for (int f = 0; f < names.size(); f++) {
+            if (!listed[f]) {
+                sorted.add(names.get(f));
+            }
+        }
+        return sorted;
+    }
+
+    private boolean sameLine(int first, int widget) {
+        return page[first] == page[widget] && centerY[first] - centerY[widget] <= LINE_TOLERANCE;
+    }
+
+    private static long position(float coordinate) {
+        long quarters = Math.round(coordinate * 4.0) + POSITION_OFFSET;
+        return Math.max(0, Math.min(POSITION_MAX, quarters));
+    }
+
+    private static float number(COSBase base) {
+        return base instanceof COSNumber ? ((COSNumber) base).floatValue() : 0;
+    }
+
+    private static float lineTolerance() {
+        String tolerance = System.getenv("LINE_TOLERANCE");
+        return tolerance != null ? Float.parseFloat(tolerance) : 4;
+    }
+}
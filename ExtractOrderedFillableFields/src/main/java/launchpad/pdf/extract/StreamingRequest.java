@@ -0,0 +1,133 @@
+package launchpad.pdf.extract;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Request of a RequestStreamHandler read with Jackson's streaming parser. The base64 document field is decoded
+// straight from the parser's input buffer into a temp file, so the base64 text never becomes a String;
+// every other field is kept as text (objects and arrays as their JSON).
+final class StreamingRequest implements Closeable {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final Map<String, String> fields = new HashMap<>();
+    private Path document;
+
+    private StreamingRequest() {
+    }
+
+    static StreamingRequest read(InputStream input, String documentField) throws IOException {
+        StreamingRequest request = new StreamingRequest();
+        try (JsonParser parser = JSON_FACTORY.createParser(input)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Request must be a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if (name.equals(documentField) && value == JsonToken.VALUE_STRING) {
+                    request.document = Files.createTempFile("document", ".bin");
+                    try (OutputStream documentOutput = new BufferedOutputStream(Files.newOutputStream(request.document), 64 * 1024)) {
+                        parser.readBinaryValue(Base64Variants.MIME_NO_LINEFEEDS, documentOutput);
+                    }
+                } else if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                    StringWriter json = new StringWriter();
+                    try (JsonGenerator generator = JSON_FACTORY.createGenerator(json)) {
+                        generator.copyCurrentStructure(parser);
+                    }
+                    request.fields.put(name, json.toString());
+                } else if (value != JsonToken.VALUE_NULL) {
+                    request.fields.put(name, parser.getText());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            request.close();
+            throw e;
+        }
+        return request;
+    }
+
+    String get(String name) {
+        return fields.get(name);
+    }
+
+    // Decoded document, else the document named by documentRef; null when neither was given
+    Path document() throws IOException {
+        if (document != null && Files.size(document) > 0) {
+            return document;
+        }
+        String reference = fields.get(DocumentStore.DOCUMENT_REF);
+        return reference != null ? DocumentStore.resolve(reference) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (document != null) {
+            Files.deleteIfExists(document);
+        }
+    }
+
+    // Response of a String handler: a JSON string (or null)
+    static void writeString(OutputStream output, String value) throws IOException {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                generator.writeString(value);
+            }
+        }
+    }
+
+    // Response of a String handler returning a base64 document, encoded on the fly from the file
+    static void writeBase64(OutputStream output, Path file) throws IOException {
+        try (InputStream content = Files.newInputStream(file)) {
+            writeBase64(output, content);
+        }
+    }
+
+    // The same for content that is not in a file, encoded on the fly as it is read
+    static void writeBase64(OutputStream output, InputStream content) throws IOException {
+        output.write('"');
+        try (OutputStream encoder = Base64.getEncoder().wrap(new NonClosingOutputStream(output))) {
+            content.transferTo(encoder);
+        }
+        output.write('"');
+        output.flush();
+    }
+
+    // Closing the encoder writes the padding, the response stream stays open for the closing quote
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -6,8 +6,9 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 import org.apache.pdfbox.pdmodel.interactive.form.PDField;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
@@ -19,20 +20,30 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
     @Override
     public String handleRequest(Map<String, Object> input, Context context) {
         try {
+            // Or a reference (store://key, or a path or file: URI inside the document store), PDFBox then reads the file from disk
+            String documentRef = (String) input.get(DocumentStore.DOCUMENT_REF);
+            if (documentRef != null) {
+                // Only the form's objects are parsed when AcroFormReader can, else the whole document
+                return AcroFormReader.list(DocumentStore.resolve(documentRef), this::listFormFields);
+            }
+
             // Get base64
             String base64Pdf = (String) input.get("base64Pdf");
             if (base64Pdf == null || base64Pdf.isEmpty()) {
                 return "No base64 PDF data provided.";
             }
 
-            // Decode base64
-            byte[] pdfBytes = Base64.getDecoder().decode(base64Pdf);
-
-            // Extract form field names from the PDF
-            List<String> fieldNames = extractFormFieldNames(pdfBytes);
-
-            // Return the comma-separated form field names
-            return String.join(",", fieldNames);
+            // Read the form's objects, or load the whole PDF; a large PDF is decoded into a temp file, see MemoryPolicy
+            if (MemoryPolicy.inMemory(base64Pdf)) {
+                byte[] pdfBytes = Base64.getDecoder().decode(base64Pdf);
+                return AcroFormReader.list(pdfBytes, this::listFormFields);
+            }
+            Path pdfFile = MemoryPolicy.decode(base64Pdf);
+            try {
+                return AcroFormReader.list(pdfFile, this::listFormFields);
+            } finally {
+                Files.deleteIfExists(pdfFile);
+            }
 
         } catch (IOException e) {
             context.getLogger().log("Error processing PDF: " + e.getMessage());
@@ -40,11 +51,17 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
         }
     }
 
-    private List<String> extractFormFieldNames(byte[] pdfBytes) throws IOException {
-        List<String> fieldNames = new ArrayList<>();
+    // Comma-separated field names, shared by the String and the stream handler
+    String listFormFields(PDDocument document) {
+        // Extract form field names from the PDF
+        List<String> fieldNames = extractFormFieldNames(document);
 
-        // Load PDF from byte array
-        PDDocument document = PDDocument.load(new ByteArrayInputStream(pdfBytes));
+        // Return the comma-separated form field names
+        return String.join(",", fieldNames);
+    }
+
+    private List<String> extractFormFieldNames(PDDocument document) {
+        List<String> fieldNames = new ArrayList<>();
 
         // Access the AcroForm (form) of the PDF
         PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
@@ -59,9 +76,6 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
             }
         }
 
-        // Close the document
-        document.close();
-
         return fieldNames;
     }
 }
\ No newline at end of file
@@ -0,0 +1,84 @@
+package fields.extract;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+// How much of a PDF PDFBox holds on the heap. Parsed stream data lives in PDFBox's scratch buffer: up to
+// PDF_MEMORY_MB (default 32, -1 for no limit) in memory, the rest spills to a scratch file in PDF_SCRATCH_DIR
+// (default the temp dir, /tmp on Lambda), so the heap stays capped whatever the size of the document. Base64 inputs
+// that decode to more than PDF_FILE_MB (default 8) are decoded straight into a temp file, a block at a time, and read
+// from disk; the decoded bytes are never on the heap next to the base64 text.
+final class MemoryPolicy {
+
+    private static final long MAIN_MEMORY_BYTES = megabytes("PDF_MEMORY_MB", 32);
+    private static final long FILE_THRESHOLD_BYTES = megabytes("PDF_FILE_MB", 8);
+    private static final File SCRATCH_DIR = scratchDir();
+    // Base64 characters decoded per block, whole 4-character groups
+    private static final int DECODE_BLOCK = 64 * 1024;
+
+    private MemoryPolicy() {
+    }
+
+    static MemoryUsageSetting setting() {
+        if (MAIN_MEMORY_BYTES < 0) {
+            return MemoryUsageSetting.setupMainMemoryOnly();
+        }
+        return MemoryUsageSetting.setupMixed(MAIN_MEMORY_BYTES).setTempDir(SCRATCH_DIR);
+    }
+
+    static PDDocument load(Path file) throws IOException {
+        return PDDocument.load(file.toFile(), setting());
+    }
+
+    // Read in place, PDFBox does not copy a byte array (it does copy an InputStream). Large inputs do not get here as
+    // bytes, see inMemory; writing a byte array out to a file would not free it, the caller still holds it.
+    static PDDocument load(byte[] pdf) throws IOException {
+        return PDDocument.load(pdf, "", null, null, setting());
+    }
+
+    // Whether the base64 text is decoded on the heap, or with decode into a temp file
+    static boolean inMemory(String base64) {
+        return base64.length() / 4L * 3 <= FILE_THRESHOLD_BYTES;
+    }
+
+    // The base64 text decoded into a temp file in the scratch dir, which the caller deletes
+    static Path decode(String base64) throws IOException {
+        Path file = Files.createTempFile(SCRATCH_DIR.toPath(), "document", ".pdf");
+        try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024)) {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] text = new byte[DECODE_BLOCK];
+            for (int start = 0; start < base64.length(); start += DECODE_BLOCK) {
+                int length = Math.min(DECODE_BLOCK, base64.length() - start);
+                for (int i = 0; i < length; i++) {
+                    text[i] = (byte) base64.charAt(start + i);
+                }
+                ByteBuffer bytes = decoder.decode(ByteBuffer.wrap(text, 0, length));
+                output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static long megabytes(String variable, long defaultValue) {
+        String value = System.getenv(variable);
+        long megabytes = value != null ? Long.parseLong(value) : defaultValue;
+        return megabytes < 0 ? -1 : megabytes * 1024 * 1024;
+    }
+
+    private static File scratchDir() {
+        String dir = System.getenv("PDF_SCRATCH_DIR");
+        return new File(dir != null ? dir : System.getProperty("java.io.tmpdir"));
+    }
+}
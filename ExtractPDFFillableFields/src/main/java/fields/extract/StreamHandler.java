@@ -0,0 +1,32 @@
+package fields.extract;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+// Same request and response as Main, but the base64 PDF is decoded from the request stream into a temp file
+// that is read from disk, instead of being held on the heap as a String and a byte array. AcroFormReader maps the
+// file and parses only the form; on the full load, parsed streams beyond MemoryPolicy's budget spill to a scratch file.
+public class StreamHandler implements RequestStreamHandler {
+
+    private final Main main = new Main();
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        String result;
+        try (StreamingRequest request = StreamingRequest.read(input, "base64Pdf")) {
+            if (request.document() == null) {
+                result = "No base64 PDF data provided.";
+            } else {
+                result = AcroFormReader.list(request.document(), main::listFormFields);
+            }
+        } catch (IOException e) {
+            context.getLogger().log("Error processing PDF: " + e.getMessage());
+            result = "Error processing PDF: " + e.getMessage();
+        }
+        StreamingRequest.writeString(output, result);
+    }
+}
@@ -3,18 +3,12 @@ package launchpad.docx.extract;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableRow;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
 import org.apache.commons.codec.binary.Base64;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Main implements RequestHandler<Map<String, Object>, String> {
 
@@ -22,81 +16,55 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
         // Extract the base64 encoded DOCX
         String base64Docx = (String) input.get("docxBase64");
 
+        // Or read it from a reference (store://key, or a path or file: URI inside the document store) instead of inline base64
+        String documentRef = (String) input.get(DocumentStore.DOCUMENT_REF);
+        if (documentRef != null) {
+            try (InputStream docxInput = DocumentStore.open(documentRef)) {
+                return extractTags(docxInput, context);
+            } catch (IOException e) {
+                context.getLogger().log("Error processing DOCX file: " + e.getMessage());
+                return "Error processing DOCX file: " + e.getMessage();
+            }
+        }
+
         if (base64Docx == null || base64Docx.isEmpty()) {
             context.getLogger().log("No base64 input received");
             return "Error: No base64 input received";
         }
 
+        // Decode the base64 docx
+        byte[] decodedBytes = Base64.decodeBase64(base64Docx);
+        return extractTags(new ByteArrayInputStream(decodedBytes), context);
+    }
+
+    static String extractTags(InputStream docxInput, Context context) {
         try {
-            // Decode the base64 docx
-            byte[] decodedBytes = Base64.decodeBase64(base64Docx);
-            XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(decodedBytes));
+            XWPFDocument document = new XWPFDocument(docxInput);
 
             List<String> tags = new ArrayList<>();  // Use List to preserve order
             List<String> issues = new ArrayList<>(); // To store issue messages
+            StringBuilder paragraphText = new StringBuilder();
+            TagScanner scanner = new TagScanner(); // Accepting {{tag}}, {tag}} and {{tag}
 
-            // Acceoting {tag}}, {{tag}, and {{tag}
-            Pattern tagPattern = Pattern.compile("\\{\\{([^\\}]+)\\}\\}|\\{([^\\}]+)\\}\\}|\\{\\{([^\\}]+)\\}");
-
-            // Process paragraphs
-            for (XWPFParagraph paragraph : document.getParagraphs()) {
-                String paragraphText = "";
-                for (XWPFRun run : paragraph.getRuns()) {
-                    String text = run.getText(0);
-                    if (text != null) {
-                        paragraphText += text;  // Concatenate all text in the paragraph
-                    }
-                }
-                // Log the paragraph text for debugging
-                context.getLogger().log("Paragraph Text: " + paragraphText);
+            // Extraction and validation in the same pass over headers, body, tables, content controls and footers
+            BodyWalker.walk(document, paragraph -> {
+                BodyWalker.runText(paragraph, paragraphText);
 
                 // Match tags in paragraph text
-                Matcher matcher = tagPattern.matcher(paragraphText);
-                while (matcher.find()) {
-                    String tag = matcher.group();
+                scanner.reset(paragraphText);
+                while (scanner.find()) {
+                    String tag = paragraphText.substring(scanner.start(), scanner.end());
 
-                    // Add the tag to the list
+                    // Add the tag to the list regardless of its format (e.g., {tag}}, {{tag})
                     tags.add(tag);
 
                     // Handle tags that are more than 50 characters
-                    if (tag.length() - 4 > 50) {
+                    if (scanner.isTooLong()) {
                         issues.add("Tag is too long (more than 50 characters excluding curly brackets): " + tag);
                     }
                 }
-            }
-
-            // Process tables
-            for (XWPFTable table : document.getTables()) {
-                for (XWPFTableRow row : table.getRows()) {
-                    for (XWPFTableCell cell : row.getTableCells()) {
-                        for (XWPFParagraph paragraph : cell.getParagraphs()) {
-                            String paragraphText = "";
-                            for (XWPFRun run : paragraph.getRuns()) {
-                                String text = run.getText(0);
-                                if (text != null) {
-                                    paragraphText += text;
-                                }
-                            }
-                            // Logs
-                            context.getLogger().log("Table Cell Text: " + paragraphText);
-
-                            // Match tags in table cell text
-                            Matcher matcher = tagPattern.matcher(paragraphText);
-                            while (matcher.find()) {
-                                String tag = matcher.group();
-
-                                // Add the tag to the list regardless of its format (e.g., {tag}}, {{tag})
-                                tags.add(tag);
-
-                                // Handle tags with more than 50 characters
-                                if (tag.length() - 4 > 50) {
-                                    issues.add("Tag is too long (more than 50 characters excluding curly brackets): " + tag);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+            });
+            document.close();
 
             // Prepare output message
             String output = "";
@@ -119,4 +87,4 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
             return "Error processing DOCX file: " + e.getMessage();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,31 @@
+package launchpad.docx.tags;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+// Same request and response as Main, but the base64 DOCX is decoded from the request stream into a temp file
+// instead of being held on the heap as a String and a byte array.
+public class StreamHandler implements RequestStreamHandler {
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        String result;
+        try (StreamingRequest request = StreamingRequest.read(input, "docxBase64")) {
+            if (request.document() == null) {
+                context.getLogger().log("No base64 input received");
+                result = "Error: No base64 input received";
+            } else {
+                try (InputStream docxInput = new BufferedInputStream(Files.newInputStream(request.document()), 64 * 1024)) {
+                    result = Main.extractTags(docxInput, context);
+                }
+            }
+        }
+        StreamingRequest.writeString(output, result);
+    }
+}
@@ -0,0 +1,133 @@
+package launchpad.docx.tags;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// Reads the tags straight out of the body, header and footer parts with a StAX cursor, without building the POI object model.
+// The <w:t> text of each paragraph is joined in one reused buffer and matched once the paragraph ends.
+final class StreamingTagExtractor {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final Pattern TEXT_PARTS = Pattern.compile("word/(header|document|footer)(\\d*)\\.xml");
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final StringBuilder paragraphText = new StringBuilder(256);
+    private final Matcher matcher;
+    private final List<String> tags = new ArrayList<>();
+
+    private StreamingTagExtractor(Pattern tagPattern) {
+        this.matcher = tagPattern.matcher(paragraphText);
+    }
+
+    // Tags in document order (headers, body, footers, the same order as the other DOCX functions walk them). Input
+    // that is not a zip, or a zip without word/document.xml, is not a DOCX and fails as it does when POI loads it,
+    // instead of coming back as a document without tags.
+    static List<String> extractTags(InputStream docxInput, Pattern tagPattern) throws IOException, XMLStreamException {
+        // Zip order is arbitrary, so tags are kept per part and put in order at the end
+        Map<String, List<String>> tagsByPart = new TreeMap<>();
+        ZipInputStream zipInput = new ZipInputStream(docxInput);
+        boolean zip = false;
+        ZipEntry entry;
+        while ((entry = zipInput.getNextEntry()) != null) {
+            zip = true;
+            Matcher part = TEXT_PARTS.matcher(entry.getName());
+            if (part.matches()) {
+                StreamingTagExtractor extractor = new StreamingTagExtractor(tagPattern);
+                extractor.readPart(new FilterInputStream(zipInput) {
+                    @Override
+                    public void close() {
+                        // leave the zip stream open
+                    }
+                });
+                tagsByPart.put(partOrder(part.group(1), part.group(2)), extractor.tags);
+            }
+        }
+        if (!zip) {
+            throw new IOException("Not a DOCX document: the input is not a zip file");
+        }
+        if (!tagsByPart.containsKey(partOrder("document", ""))) {
+            throw new IOException("Not a DOCX document: word/document.xml is missing");
+        }
+
+        List<String> tags = new ArrayList<>();
+        for (List<String> partTags : tagsByPart.values()) {
+            tags.addAll(partTags);
+        }
+        return tags;
+    }
+
+    // For example header2 -> "0:0000000002", document -> "1:", footer10 -> "2:0000000010"
+    private static String partOrder(String kind, String number) {
+        int group = "header".equals(kind) ? 0 : "document".equals(kind) ? 1 : 2;
+        return group + ":" + (number.isEmpty() ? "" : String.format("%010d", Long.parseLong(number)));
+    }
+
+    private void readPart(InputStream partInput) throws XMLStreamException {
+        XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(partInput);
+        boolean inText = false;
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (isWordElement(reader, "p")) {
+                        // A nested paragraph (text box) ends the text collected so far
+                        matchParagraph();
+                    } else if (isWordElement(reader, "t")) {
+                        inText = true;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (isWordElement(reader, "p")) {
+                        matchParagraph();
+                    } else if (isWordElement(reader, "t")) {
+                        inText = false;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    if (inText) {
+                        paragraphText.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        matchParagraph();
+        reader.close();
+    }
+
+    private void matchParagraph() {
+        if (paragraphText.length() == 0) {
+            return;
+        }
+        matcher.reset(paragraphText);
+        while (matcher.find()) {
+            tags.add(matcher.group());
+        }
+        paragraphText.setLength(0);
+    }
+
+    private static boolean isWordElement(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName()) && WORDML_NS.equals(reader.getNamespaceURI());
+    }
+}
@@ -0,0 +1,22 @@
+package launchpad.pdf.fill.sanitized;
+
+// When field appearances are built, per request ("appearances"). PDFBox skips building them while the form has
+// NeedAppearances set, which NEED_APPEARANCES leaves set in the saved document.
+enum AppearanceMode {
+    // Each setValue builds its widget's appearance on the spot (the default, as before)
+    IMMEDIATE,
+    // No appearances are built, NeedAppearances tells viewers to build them; for consumers that render themselves
+    NEED_APPEARANCES;
+
+    static final String KEY = "appearances";
+
+    static AppearanceMode of(Object value) {
+        if (value == null || "immediate".equalsIgnoreCase(value.toString())) {
+            return IMMEDIATE;
+        }
+        if ("needAppearances".equalsIgnoreCase(value.toString())) {
+            return NEED_APPEARANCES;
+        }
+        throw new IllegalArgumentException("appearances must be immediate or needAppearances, not " + value);
+    }
+}
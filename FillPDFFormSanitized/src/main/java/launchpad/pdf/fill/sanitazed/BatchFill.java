@@ -0,0 +1,116 @@
+package launchpad.pdf.fill.sanitized;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Batch mode: many cases filled from one template. The template is parsed once (or comes from the cache), every
+// case gets a copy of it, and the copies are filled and saved on a bounded pool. The results go into a zip in case
+// order, case-0001.pdf, case-0002.pdf, ...; a case that fails becomes case-000N.error.txt with the error, and the
+// other cases are still filled.
+final class BatchFill {
+
+    static final String JSON_CASES = "jsonCases";
+
+    // Worker threads, FILL_THREADS or one per available processor
+    private static final int THREADS = threads();
+
+    private final Main main;
+    private final Template template;
+    private final AppearanceMode appearances;
+    private final SaveMode save;
+
+    BatchFill(Main main, Template template, AppearanceMode appearances, SaveMode save) {
+        this.main = main;
+        this.template = template;
+        this.appearances = appearances;
+        this.save = save;
+    }
+
+    // Writes the zip of filled PDFs to output; output is not closed
+    void fillAll(List<Object> cases, OutputStream output) throws IOException, InterruptedException {
+        int threads = Math.max(1, Math.min(THREADS, cases.size()));
+        String entryName = "case-%0" + Math.max(4, String.valueOf(cases.size()).length()) + "d";
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ZipOutputStream zip = new ZipOutputStream(output);
+
+            // At most two cases per thread in flight, so only those PDFs are held while the zip is written in order
+            Deque<Future<byte[]>> window = new ArrayDeque<>();
+            int written = 0;
+            for (Object jsonCase : cases) {
+                window.add(pool.submit(() -> fillCase(jsonCase)));
+                if (window.size() >= threads * 2) {
+                    writeEntry(zip, String.format(entryName, ++written), window.poll());
+                }
+            }
+            while (!window.isEmpty()) {
+                writeEntry(zip, String.format(entryName, ++written), window.poll());
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] fillCase(Object jsonCase) throws IOException {
+        // An incremental save needs a document parsed from the original PDF, a copy has no original bytes
+        try (PDDocument document = save == SaveMode.INCREMENTAL ? template.reload() : template.copy()) {
+            List<PDField> changed;
+            if (jsonCase instanceof Map) {
+                changed = main.fillForm(document, (Map<String, Object>) jsonCase, template.fields(), appearances);
+            } else if (jsonCase instanceof String) {
+                changed = main.fillForm(document, (String) jsonCase, template.fields(), appearances);
+            } else {
+                throw new IllegalArgumentException("A case must be a JSON object or a JSON string, not " + jsonCase);
+            }
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            main.save(document, template, changed, save, output);
+            return output.toByteArray();
+        }
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, Future<byte[]> result) throws IOException, InterruptedException {
+        byte[] content;
+        try {
+            content = result.get();
+            name += ".pdf";
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            content = ("Error processing PDF: " + e.getCause().getMessage()).getBytes(StandardCharsets.UTF_8);
+            name += ".error.txt";
+        }
+        // Stored, not deflated: the filled PDFs are mostly compressed streams already
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static int threads() {
+        String threads = System.getenv("FILL_THREADS");
+        return threads != null ? Integer.parseInt(threads) : Runtime.getRuntime().availableProcessors();
+    }
+}
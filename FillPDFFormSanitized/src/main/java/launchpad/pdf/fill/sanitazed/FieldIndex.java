@@ -0,0 +1,70 @@
+package launchpad.pdf.fill.sanitized;
+
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDComboBox;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDRadioButton;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Every field of the form tree (nested ones too) by sanitized fully qualified name, built once per template instead
+// of sanitizing every field name for every JSON key. Holds names and normalized choices only, so one index serves
+// every copy of the template.
+final class FieldIndex {
+
+    private final Map<String, FieldInfo> fields;
+
+    private FieldIndex(Map<String, FieldInfo> fields) {
+        this.fields = fields;
+    }
+
+    static FieldIndex of(PDAcroForm acroForm) {
+        if (acroForm == null) {
+            return new FieldIndex(Collections.emptyMap());
+        }
+        Map<String, FieldInfo> fields = new HashMap<>();
+        // Parents come before their kids, the first field with a name wins
+        for (PDField field : acroForm.getFieldTree()) {
+            String name = field.getFullyQualifiedName();
+            if (name != null) {
+                fields.putIfAbsent(Main.sanitizeFieldName(name), new FieldInfo(field));
+            }
+        }
+        return new FieldIndex(fields);
+    }
+
+    FieldInfo get(String sanitizedName) {
+        return fields.get(sanitizedName);
+    }
+
+    static final class FieldInfo {
+        private final String name;
+        // Combo box options, for the membership test
+        final Set<String> options;
+        // Radio button export values by their trimmed lower-case form, the first one wins as in the loop it replaces
+        final Map<String, String> exportValues;
+
+        private FieldInfo(PDField field) {
+            this.name = field.getFullyQualifiedName();
+            this.options = field instanceof PDComboBox ? new HashSet<>(((PDComboBox) field).getOptions()) : Collections.emptySet();
+            if (field instanceof PDRadioButton) {
+                Map<String, String> exportValues = new HashMap<>();
+                for (String exportValue : ((PDRadioButton) field).getExportValues()) {
+                    exportValues.putIfAbsent(exportValue.trim().toLowerCase(), exportValue);
+                }
+                this.exportValues = exportValues;
+            } else {
+                this.exportValues = Collections.emptyMap();
+            }
+        }
+
+        // acroForm must have field caching on, then this is a hash lookup
+        PDField field(PDAcroForm acroForm) {
+            return acroForm.getField(name);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package launchpad.pdf.fill.sanitized;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceDictionary;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAppearanceEntry;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTerminalField;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+// Writes a filled document as an incremental update of the PDF it was loaded from. PDFBox only writes the objects
+// it is given and the ones flagged as updated that it reaches from them, so the fill's changes are listed here:
+// the form dictionary (NeedAppearances), each changed field, its widgets (/AS) and their appearance streams, which
+// are rewritten in place. New appearance streams are new objects and written anyway.
+final class IncrementalSave {
+
+    private IncrementalSave() {
+    }
+
+    // allFields: PDFBox rebuilt every appearance when the form was read (the template had NeedAppearances set)
+    static void save(PDDocument document, List<PDField> changed, boolean allFields, OutputStream output) throws IOException {
+        Set<COSDictionary> objects = Collections.newSetFromMap(new IdentityHashMap<>());
+        COSDictionary catalog = document.getDocumentCatalog().getCOSObject();
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm(null);
+        if (acroForm != null) {
+            // A direct form dictionary is written with the catalog
+            objects.add(catalog.getItem(COSName.ACRO_FORM) instanceof COSObject ? acroForm.getCOSObject() : catalog);
+            for (PDField field : allFields ? acroForm.getFieldTree() : changed) {
+                add(field, objects);
+            }
+        }
+        document.saveIncremental(output, objects);
+    }
+
+    private static void add(PDField field, Set<COSDictionary> objects) {
+        if (!(field instanceof PDTerminalField)) {
+            return;
+        }
+        objects.add(field.getCOSObject());
+        for (PDAnnotationWidget widget : ((PDTerminalField) field).getWidgets()) {
+            objects.add(widget.getCOSObject());
+            COSBase appearanceItem = widget.getCOSObject().getItem(COSName.AP);
+            PDAppearanceDictionary appearance = widget.getAppearance();
+            if (appearance == null) {
+                continue;
+            }
+            if (appearanceItem instanceof COSObject) {
+                objects.add(appearance.getCOSObject());
+            }
+            PDAppearanceEntry normal = appearance.getNormalAppearance();
+            if (normal != null && normal.isStream()) {
+                objects.add(normal.getAppearanceStream().getCOSObject());
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package launchpad.pdf.fill.sanitized;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
@@ -12,116 +13,84 @@ import org.apache.pdfbox.pdmodel.interactive.form.PDRadioButton;
 import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
 
 import java.io.*;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Base64;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class Main implements RequestHandler<Map<String, Object>, String> {
 
     private final ObjectMapper objectMapper = new ObjectMapper(); // JSON parsing
 
+    // Field name sanitizing, compiled once
+    private static final Pattern CONTROL_CHARACTERS = Pattern.compile("[\\x00-\\x1F\\x7F]");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // Parsed templates reused across invocations of a warm container (before the priming below, which uses it)
+    static final TemplateCache TEMPLATES = TemplateCache.fromEnvironment();
+
+    static {
+        // Warm up during the init phase (StreamHandler gets it through its Main instance)
+        Priming.prime();
+    }
+
     @Override
     public String handleRequest(Map<String, Object> input, Context context) {
         try {
             // Two inputs
             String base64PDF = (String) input.get("base64PDF");
             String jsonCase = (String) input.get("jsonCase");
-
-            if (base64PDF == null || jsonCase == null) {
+            // Optional: PDF and/or result by reference (store://key, or a path or file: URI inside the document store) instead of inline base64
+            String documentRef = (String) input.get(DocumentStore.DOCUMENT_REF);
+            String outputRef = (String) input.get(DocumentStore.OUTPUT_REF);
+            // Optional batch mode: an array of cases instead of jsonCase, the result is a zip of filled PDFs
+            Object jsonCases = input.get(BatchFill.JSON_CASES);
+            // Optional: immediate (default) or needAppearances appearance building
+            AppearanceMode appearances = AppearanceMode.of(input.get(AppearanceMode.KEY));
+            // Optional: full (default) or incremental, which appends the changes to the original PDF
+            SaveMode save = SaveMode.of(input.get(SaveMode.KEY));
+
+            if ((base64PDF == null && documentRef == null) || (jsonCase == null && jsonCases == null)) {
                 return "Error: Missing required input (base64PDF or jsonCase)";
             }
 
-            // Clean the JSON
-            jsonCase = sanitizeJsonString(jsonCase);
+            long cacheChanges = TEMPLATES.misses() + TEMPLATES.evictions();
+            Template template = loadTemplate(base64PDF, documentRef != null ? DocumentStore.resolve(documentRef) : null, save);
+            // The cache counters when this request parsed or evicted a template, a hit adds no log line
+            if (context != null && TEMPLATES.misses() + TEMPLATES.evictions() != cacheChanges) {
+                context.getLogger().log(TEMPLATES.toString());
+            }
 
-            // Decode base64 PDF to a byte array
-            byte[] pdfBytes = Base64.getDecoder().decode(base64PDF);
-            ByteArrayInputStream pdfInputStream = new ByteArrayInputStream(pdfBytes);
-
-            // Load PDF document
-            PDDocument document = PDDocument.load(pdfInputStream);
-            PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
-
-            if (acroForm != null) {
-                // Parse the sanitized JSON input into a Map
-                Map<String, Object> jsonMap = parseJson(jsonCase);
-
-                for (Map.Entry<String, Object> entry : jsonMap.entrySet()) {
-                    // Sanitize the field name by removing or avoiding characters
-                    String fieldName = sanitizeFieldName(entry.getKey());
-                    Object value = entry.getValue();
-
-                    // Find the matching field in the PDF
-                    PDField field = findMatchingField(acroForm, fieldName);
-
-                    if (field != null) {
-                        // Normalize the value
-                        String normalizedValue = normalizeValue(value);
-
-                        if (field instanceof PDComboBox) { // For dropdowns
-                            PDComboBox comboBox = (PDComboBox) field;
-                            List<String> options = comboBox.getOptions();
-
-                            // Set the value only if it's a valid dropdown option
-                            if (options.contains(normalizedValue)) {
-                                comboBox.setValue(normalizedValue);
-                            } else {
-                                comboBox.setValue(""); // Leave blank if invalid
-                            }
-                        } else if (field instanceof PDCheckBox) { // For checkbox
-                            PDCheckBox checkBox = (PDCheckBox) field;
-
-                            // Check the box if the value is equivalent to "true" or "yes"
-                            if (normalizedValue.equals("true") || normalizedValue.equals("Yes")) {
-                                checkBox.check();
-                            } else {
-                                checkBox.unCheck();
-                            }
-                        } else if (field instanceof PDRadioButton) { // For radio buttons
-                            PDRadioButton radioButton = (PDRadioButton) field;
-
-                            // Get options for radio buttons
-                            List<String> exportValues = radioButton.getExportValues();
-
-                            // Normalize the input, trim spaces and convert to lowercase
-                            String normalizedInputValue = normalizeValue(value).trim().toLowerCase();
-
-                            // Loop through the export values and normalize them
-                            for (String exportValue : exportValues) {
-                                // Normalize each option
-                                String normalizedExportValue = exportValue.trim().toLowerCase();
-
-                                // Check if the input is in a option
-                                if (normalizedInputValue.equals(normalizedExportValue)) {
-                                    // Select the radio button
-                                    radioButton.setValue(exportValue); 
-                                    break;
-                                }
-                            }
-                    } else if (field instanceof PDTextField) { // For text fields
-                            PDTextField textField = (PDTextField) field;
-
-                            // If the field is a boolean or yes/no, set the value as "Yes" or "No"
-                            if (normalizedValue.equals("true") || normalizedValue.equals("Yes")) {
-                                textField.setValue("Yes");
-                            } else if (normalizedValue.equals("false") || normalizedValue.equals("No")) {
-                                textField.setValue("No");
-                            } else {
-                                textField.setValue(normalizedValue); // Set text
-                            }
-                        } else {
-                            field.setValue(normalizedValue); // Set text fields
-                        }
-                    }
-                }
+            if (jsonCases != null) {
+                return fillBatch(template, jsonCases, appearances, save, outputRef);
             }
 
-            // Save to ByteArrayOutputStream
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.save(outputStream);
-            document.close();
+            // A cached template stays untouched, the case is filled into a copy; closed whether the fill succeeds or not
+            try (PDDocument document = template.cached() ? template.copy() : template.document()) {
+                // Fill the fields from the JSON case
+                List<PDField> changed = fillForm(document, jsonCase, template.fields(), appearances);
+
+                if (outputRef != null) {
+                    // Save to the reference and return it instead of the base64 PDF
+                    try (DocumentStore.Output pdfOutput = DocumentStore.create(outputRef)) {
+                        save(document, template, changed, save, pdfOutput.stream());
+                        pdfOutput.commit();
+                    }
+                    return outputRef;
+                }
+
+                // Save to ByteArrayOutputStream
+                save(document, template, changed, save, outputStream);
+            } finally {
+                if (!template.cached()) {
+                    template.close();
+                }
+            }
 
             // Encode updated PDF to base64
             String updatedBase64 = Base64.getEncoder().encodeToString(outputStream.toByteArray());
@@ -133,11 +102,164 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
         }
     }
 
+    // The parsed template for a request: from the cache when it fits, otherwise loaded for this request only
+    Template loadTemplate(String base64PDF, Path file, SaveMode save) throws IOException {
+        if (save == SaveMode.INCREMENTAL) {
+            // Not from the cache: an incremental save appends to the original bytes, which only a document parsed
+            // from them has (the cache's copies are rebuilt object trees)
+            if (file != null) {
+                return new Template(PDDocument.load(file.toFile()), false, null, file);
+            }
+            byte[] pdfBytes = Base64.getDecoder().decode(base64PDF);
+            return new Template(PDDocument.load(pdfBytes), false, pdfBytes, null);
+        }
+        if (file != null) {
+            // From the cache when the file fits in it; otherwise PDFBox reads the file from disk for this request,
+            // it is never copied onto the heap
+            Template cached = TEMPLATES.get(file);
+            return cached != null ? cached : new Template(PDDocument.load(file.toFile()), false);
+        }
+
+        // Decode base64 PDF to a byte array (the cache keys on the bytes)
+        byte[] pdfBytes = Base64.getDecoder().decode(base64PDF);
+        Template cached = TEMPLATES.get(pdfBytes);
+        return cached != null ? cached : new Template(PDDocument.load(pdfBytes), false);
+    }
+
+    // Fills every case from the one template and returns the zip as base64, or writes it to outputRef
+    @SuppressWarnings("unchecked")
+    private String fillBatch(Template template, Object jsonCases, AppearanceMode appearances, SaveMode save,
+                             String outputRef) throws Exception {
+        try {
+            // A JSON array in the request arrives as a List, the array can also be sent as a JSON string
+            List<Object> cases = jsonCases instanceof List ? (List<Object>) jsonCases : parseCases((String) jsonCases);
+            BatchFill batch = new BatchFill(this, template, appearances, save);
+
+            if (outputRef != null) {
+                try (DocumentStore.Output zipOutput = DocumentStore.create(outputRef)) {
+                    batch.fillAll(cases, zipOutput.stream());
+                    zipOutput.commit();
+                }
+                return outputRef;
+            }
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            batch.fillAll(cases, outputStream);
+            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+        } finally {
+            if (!template.cached()) {
+                template.close();
+            }
+        }
+    }
+
+    // Writes the filled document, whole or as an incremental update of the template's PDF
+    void save(PDDocument document, Template template, List<PDField> changed, SaveMode save, OutputStream output)
+            throws IOException {
+        if (save == SaveMode.INCREMENTAL) {
+            IncrementalSave.save(document, changed, template.needAppearances(), output);
+        } else {
+            document.save(output);
+        }
+    }
+
+    // Sets every field named in the JSON case, shared by the String and the stream handler; returns the fields set
+    List<PDField> fillForm(PDDocument document, String jsonCase, FieldIndex fields, AppearanceMode appearances) throws IOException {
+        // Clean the JSON
+        jsonCase = sanitizeJsonString(jsonCase);
+
+        // Parse the sanitized JSON input into a Map
+        return fillForm(document, parseJson(jsonCase), fields, appearances);
+    }
+
+    // Sets every field named in an already parsed case (batch cases arrive parsed)
+    List<PDField> fillForm(PDDocument document, Map<String, Object> jsonMap, FieldIndex fields, AppearanceMode appearances) throws IOException {
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm();
+        List<PDField> changed = new ArrayList<>();
+
+        if (acroForm != null) {
+            // The index holds fully qualified names, with the cache on PDFBox resolves them by hash lookup
+            acroForm.setCacheFields(true);
+
+            // While NeedAppearances is set, setValue, check and unCheck only set the value (and the state of buttons)
+            if (appearances == AppearanceMode.NEED_APPEARANCES) {
+                acroForm.setNeedAppearances(true);
+            }
+
+            for (Map.Entry<String, Object> entry : jsonMap.entrySet()) {
+                // Sanitize the field name by removing or avoiding characters
+                String fieldName = sanitizeFieldName(entry.getKey());
+                Object value = entry.getValue();
+
+                // Find the matching field in the PDF
+                FieldIndex.FieldInfo info = fields.get(fieldName);
+                PDField field = info != null ? info.field(acroForm) : null;
+
+                if (field != null) {
+                    // Normalize the value
+                    String normalizedValue = normalizeValue(value);
+
+                    if (field instanceof PDComboBox) { // For dropdowns
+                        PDComboBox comboBox = (PDComboBox) field;
+
+                        // Set the value only if it's a valid dropdown option
+                        if (info.options.contains(normalizedValue)) {
+                            comboBox.setValue(normalizedValue);
+                        } else {
+                            comboBox.setValue(""); // Leave blank if invalid
+                        }
+                    } else if (field instanceof PDCheckBox) { // For checkbox
+                        PDCheckBox checkBox = (PDCheckBox) field;
+
+                        // Check the box if the value is equivalent to "true" or "yes"
+                        if (normalizedValue.equals("true") || normalizedValue.equals("Yes")) {
+                            checkBox.check();
+                        } else {
+                            checkBox.unCheck();
+                        }
+                    } else if (field instanceof PDRadioButton) { // For radio buttons
+                        PDRadioButton radioButton = (PDRadioButton) field;
+
+                        // Normalize the input, trim spaces and convert to lowercase
+                        String normalizedInputValue = normalizeValue(value).trim().toLowerCase();
+
+                        // The export values are indexed the same way
+                        String exportValue = info.exportValues.get(normalizedInputValue);
+                        if (exportValue != null) {
+                            // Select the radio button
+                            radioButton.setValue(exportValue);
+                        }
+                } else if (field instanceof PDTextField) { // For text fields
+                        PDTextField textField = (PDTextField) field;
+
+                        // If the field is a boolean or yes/no, set the value as "Yes" or "No"
+                        if (normalizedValue.equals("true") || normalizedValue.equals("Yes")) {
+                            textField.setValue("Yes");
+                        } else if (normalizedValue.equals("false") || normalizedValue.equals("No")) {
+                            textField.setValue("No");
+                        } else {
+                            textField.setValue(normalizedValue); // Set text
+                        }
+                    } else {
+                        field.setValue(normalizedValue); // Set text fields
+                    }
+                    changed.add(field);
+                }
+            }
+        }
+        return changed;
+    }
+
     // Helper method to parse the JSON string into a Map using Jackson
     private Map<String, Object> parseJson(String json) throws IOException {
         return objectMapper.readValue(json, Map.class); // Convert JSON to a Map
     }
 
+    // Parses a JSON array of cases for batch mode; each element is a case object or a JSON case string
+    List<Object> parseCases(String json) throws IOException {
+        return objectMapper.readValue(sanitizeJsonString(json), new TypeReference<List<Object>>() {});
+    }
+
     // Normalize values
     private String normalizeValue(Object value) {
         if (value == null) return "";
@@ -157,9 +279,10 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
     }
 
     // Helper method to sanitize the field name
-    private String sanitizeFieldName(String fieldName) {
+    static String sanitizeFieldName(String fieldName) {
         // Replace all non-printable characters ( tabs, newlines) and spaces with an underscore
-        return fieldName.replaceAll("[\\x00-\\x1F\\x7F]", "_").replaceAll("\\s+", " ").trim(); // Handle extra spaces
+        String printable = CONTROL_CHARACTERS.matcher(fieldName).replaceAll("_");
+        return WHITESPACE.matcher(printable).replaceAll(" ").trim(); // Handle extra spaces
     }
 
     // Helper method to sanitize the JSON string by avoiding characters
@@ -178,15 +301,4 @@ public class Main implements RequestHandler<Map<String, Object>, String> {
 
         return sanitizedJson.toString();
     }
-
-    // Find a matching field in the PDF based on sanitized field names
-    private PDField findMatchingField(PDAcroForm acroForm, String fieldName) {
-        for (PDField field : acroForm.getFields()) {
-            String actualFieldName = sanitizeFieldName(field.getFullyQualifiedName());
-            if (actualFieldName.equals(fieldName)) {
-                return field;
-            }
-        }
-        return null;
-    }
 }
@@ -0,0 +1,178 @@
+package launchpad.pdf.fill.sanitized;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDComboBox;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Fills a tiny PDF form while the handler class initializes, so PDFBox (parser, fonts, appearance generation,
+// writer) and Jackson are loaded and warmed during the Lambda init phase instead of the first request.
+// PRIMING=false turns it off. main() is the training run for the AppCDS archive (appcds profile).
+final class Priming {
+
+    private static boolean primed;
+
+    private Priming() {
+    }
+
+    static synchronized void prime() {
+        if (primed || "false".equalsIgnoreCase(System.getenv("PRIMING"))) {
+            return;
+        }
+        primed = true;
+
+        try {
+            Context context = new PrimingContext();
+            Map<String, Object> input = new HashMap<>();
+            input.put("base64PDF", Base64.getEncoder().encodeToString(samplePdf()));
+            input.put("jsonCase", "{\"Name\":\"Primed\",\"Amount\":12.5,\"Choice\":\"B\"}");
+            new Main().handleRequest(input, context);
+
+            // Stream handler request parsing and response writing
+            String request = "{\"base64PDF\":\"" + input.get("base64PDF") + "\",\"jsonCase\":\"{}\"}";
+            new StreamHandler().handleRequest(new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayOutputStream(), context);
+        } catch (Exception e) {
+            // Priming only warms up, it must never keep the function from starting
+            System.err.println("Priming failed: " + e);
+        } finally {
+            // The sample form must not count as a template of the function, nor hold space in the cache
+            Main.TEMPLATES.clear();
+        }
+    }
+
+    // One page with two text fields and a combo box
+    private static byte[] samplePdf() throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDPage page = new PDPage();
+            document.addPage(page);
+
+            PDAcroForm acroForm = new PDAcroForm(document);
+            document.getDocumentCatalog().setAcroForm(acroForm);
+            PDResources resources = new PDResources();
+            resources.put(COSName.getPDFName("Helv"), PDType1Font.HELVETICA);
+            acroForm.setDefaultResources(resources);
+            acroForm.setDefaultAppearance("/Helv 0 Tf 0 g");
+
+            PDTextField name = new PDTextField(acroForm);
+            name.setPartialName("Name");
+            addField(acroForm, page, name, 700);
+
+            PDTextField amount = new PDTextField(acroForm);
+            amount.setPartialName("Amount");
+            addField(acroForm, page, amount, 660);
+
+            PDComboBox choice = new PDComboBox(acroForm);
+            choice.setPartialName("Choice");
+            choice.setOptions(Arrays.asList("A", "B"));
+            addField(acroForm, page, choice, 620);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.save(output);
+            return output.toByteArray();
+        }
+    }
+
+    private static void addField(PDAcroForm acroForm, PDPage page, PDField field, float y) throws IOException {
+        PDAnnotationWidget widget = field.getWidgets().get(0);
+        widget.setRectangle(new PDRectangle(50, y, 200, 20));
+        widget.setPage(page);
+        page.getAnnotations().add(widget);
+        acroForm.getFields().add(field);
+    }
+
+    // A Context as Lambda passes one, so the handlers run their logging paths too; what they log goes to stderr
+    private static final class PrimingContext implements Context {
+
+        private static final LambdaLogger LOGGER = new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                System.err.println("Priming: " + message);
+            }
+
+            @Override
+            public void log(byte[] message) {
+                log(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+
+        @Override
+        public String getAwsRequestId() {
+            return "priming";
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return "priming";
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return "priming";
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "priming";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return "$LATEST";
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return "priming";
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 0;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return LOGGER;
+        }
+    }
+
+    public static void main(String[] args) {
+        prime();
+    }
+}
@@ -0,0 +1,22 @@
+package launchpad.pdf.fill.sanitized;
+
+// How the filled PDF is written, per request ("save")
+enum SaveMode {
+    // The whole document is written again (the default, as before)
+    FULL,
+    // The original bytes unchanged, then only the objects the fill changed and a new xref section; signatures and
+    // their byte ranges stay valid for the original revision
+    INCREMENTAL;
+
+    static final String KEY = "save";
+
+    static SaveMode of(Object value) {
+        if (value == null || "full".equalsIgnoreCase(value.toString())) {
+            return FULL;
+        }
+        if ("incremental".equalsIgnoreCase(value.toString())) {
+            return INCREMENTAL;
+        }
+        throw new IllegalArgumentException("save must be full or incremental, not " + value);
+    }
+}
@@ -0,0 +1,81 @@
+package launchpad.pdf.fill.sanitized;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Same request and response as Main, but the base64 PDF is decoded from the request stream into a temp file, and
+// the filled PDF is encoded into the response stream, so the base64 text is never held on the heap. With the
+// template cache off (TEMPLATE_CACHE_MB=0) or an incremental save PDFBox reads the PDF from disk. documentRef,
+// outputRef, jsonCases, appearances and save work as in Main.
+public class StreamHandler implements RequestStreamHandler {
+
+    private final Main main = new Main();
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        Path result = Files.createTempFile("result", ".pdf");
+        try {
+            String outputRef;
+            try (StreamingRequest request = StreamingRequest.read(input, "base64PDF")) {
+                String jsonCase = request.get("jsonCase");
+                String jsonCases = request.get(BatchFill.JSON_CASES);
+                outputRef = request.get(DocumentStore.OUTPUT_REF);
+                AppearanceMode appearances = AppearanceMode.of(request.get(AppearanceMode.KEY));
+                SaveMode save = SaveMode.of(request.get(SaveMode.KEY));
+                if (request.document() == null || (jsonCase == null && jsonCases == null)) {
+                    StreamingRequest.writeString(output, "Error: Missing required input (base64PDF or jsonCase)");
+                    return;
+                }
+
+                Template template = main.loadTemplate(null, request.document(), save);
+                try {
+                    if (jsonCases != null) {
+                        // Batch mode, the zip of filled PDFs is the result
+                        try (DocumentStore.Output zipOutput = outputRef != null ? DocumentStore.create(outputRef)
+                                : DocumentStore.wrap(new BufferedOutputStream(Files.newOutputStream(result)))) {
+                            new BatchFill(main, template, appearances, save).fillAll(main.parseCases(jsonCases), zipOutput.stream());
+                            zipOutput.commit();
+                        }
+                    } else {
+                        // A cached template stays untouched, the case is filled into a copy
+                        try (PDDocument document = template.cached() ? template.copy() : template.document()) {
+                            List<PDField> changed = main.fillForm(document, jsonCase, template.fields(), appearances);
+                            try (DocumentStore.Output pdfOutput = outputRef != null ? DocumentStore.create(outputRef)
+                                    : DocumentStore.wrap(new BufferedOutputStream(Files.newOutputStream(result)))) {
+                                main.save(document, template, changed, save, pdfOutput.stream());
+                                pdfOutput.commit();
+                            }
+                        }
+                    }
+                } finally {
+                    if (!template.cached()) {
+                        template.close();
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                StreamingRequest.writeString(output, "Error processing PDF: " + e.getMessage());
+                return;
+            }
+
+            if (outputRef != null) {
+                // The PDF was written to the reference, only the reference goes back
+                StreamingRequest.writeString(output, outputRef);
+            } else {
+                StreamingRequest.writeBase64(output, result);
+            }
+        } finally {
+            Files.deleteIfExists(result);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package launchpad.pdf.fill.sanitized;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// A parsed PDF template and its field index. Fills never touch the template itself when it is shared (cached or
+// used by a batch): each fill gets a copy of its object tree, which costs no parsing, streams are copied raw.
+final class Template implements Closeable {
+
+    private final PDDocument document;
+    private final FieldIndex fields;
+    private final boolean cached;
+    // The PDF the template was loaded from, kept only for incremental saves, which reload it for every fill
+    private final byte[] sourceBytes;
+    private final Path sourceFile;
+    // The form asks for its appearances to be built, PDFBox then builds all of them when it first reads the form
+    private final boolean needAppearances;
+    // Encrypted templates are copied by reloading a saved snapshot, a plain copy would drop the encryption
+    private byte[] snapshot;
+    private boolean closed;
+
+    Template(PDDocument document, boolean cached) {
+        this(document, cached, null, null);
+    }
+
+    // A template that can be reloaded from its bytes or file
+    Template(PDDocument document, boolean cached, byte[] sourceBytes, Path sourceFile) {
+        this.document = document;
+        // Read before getAcroForm(), which clears NeedAppearances once it has built the appearances
+        PDAcroForm acroForm = document.getDocumentCatalog().getAcroForm(null);
+        this.needAppearances = acroForm != null && acroForm.getNeedAppearances();
+        this.fields = FieldIndex.of(document.getDocumentCatalog().getAcroForm());
+        this.cached = cached;
+        this.sourceBytes = sourceBytes;
+        this.sourceFile = sourceFile;
+    }
+
+    // The parsed template, only to be filled in place when it is not shared
+    PDDocument document() {
+        return document;
+    }
+
+    FieldIndex fields() {
+        return fields;
+    }
+
+    boolean cached() {
+        return cached;
+    }
+
+    boolean needAppearances() {
+        return needAppearances;
+    }
+
+    // A fresh parse of the original PDF, which an incremental save can append to (a copy has no original bytes)
+    PDDocument reload() throws IOException {
+        if (sourceFile != null) {
+            return PDDocument.load(sourceFile.toFile());
+        }
+        if (sourceBytes != null) {
+            return PDDocument.load(sourceBytes);
+        }
+        throw new IOException("Template was not loaded for incremental saves");
+    }
+
+    PDDocument copy() throws IOException {
+        // The template's objects are read through its parser, which is not thread safe; filling the copies is
+        synchronized (document) {
+            if (closed) {
+                throw new IOException("Template was evicted from the cache");
+            }
+            if (document.isEncrypted()) {
+                if (snapshot == null) {
+                    ByteArrayOutputStream saved = new ByteArrayOutputStream();
+                    document.save(saved);
+                    snapshot = saved.toByteArray();
+                }
+                return PDDocument.load(snapshot);
+            }
+
+            COSDocument copy = new COSDocument();
+            Map<COSBase, COSBase> copied = new IdentityHashMap<>();
+            COSDictionary trailer = new COSDictionary();
+            COSDictionary source = document.getDocument().getTrailer();
+            trailer.setItem(COSName.ROOT, copy(source.getItem(COSName.ROOT), copied, copy));
+            if (source.getItem(COSName.INFO) != null) {
+                trailer.setItem(COSName.INFO, copy(source.getItem(COSName.INFO), copied, copy));
+            }
+            copy.setTrailer(trailer);
+            copy.setVersion(document.getDocument().getVersion());
+            return new PDDocument(copy);
+        }
+    }
+
+    // Deep copy that keeps indirect objects indirect. PDFCloneUtility makes them direct, which also defeats the
+    // per-document resource cache (it is keyed by the indirect font object), so every appearance reloaded its font.
+    // Names, numbers and strings are never changed in place by a fill and are shared.
+    private static COSBase copy(COSBase base, Map<COSBase, COSBase> copied, COSDocument target) throws IOException {
+        if (base == null) {
+            return null;
+        }
+        COSBase done = copied.get(base);
+        if (done != null) {
+            return done;
+        }
+
+        if (base instanceof COSObject) {
+            COSObject object = new COSObject(null);
+            copied.put(base, object);
+            object.setObject(copy(((COSObject) base).getObject(), copied, target));
+            return object;
+        }
+        if (base instanceof COSStream) {
+            COSStream stream = target.createCOSStream();
+            copied.put(base, stream);
+            copyEntries((COSDictionary) base, stream, copied, target);
+            // Raw bytes, the filters are not run
+            try (InputStream raw = ((COSStream) base).createRawInputStream();
+                 OutputStream rawCopy = stream.createRawOutputStream()) {
+                raw.transferTo(rawCopy);
+            }
+            return stream;
+        }
+        if (base instanceof COSDictionary) {
+            COSDictionary dictionary = new COSDictionary();
+            copied.put(base, dictionary);
+            copyEntries((COSDictionary) base, dictionary, copied, target);
+            return dictionary;
+        }
+        if (base instanceof COSArray) {
+            COSArray array = new COSArray();
+            copied.put(base, array);
+            for (COSBase item : (COSArray) base) {
+                array.add(copy(item, copied, target));
+            }
+            return array;
+        }
+        return base;
+    }
+
+    private static void copyEntries(COSDictionary source, COSDictionary target, Map<COSBase, COSBase> copied,
+                                    COSDocument document) throws IOException {
+        for (Map.Entry<COSName, COSBase> entry : source.entrySet()) {
+            target.setItem(entry.getKey(), copy(entry.getValue(), copied, document));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (document) {
+            closed = true;
+            document.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package launchpad.pdf.fill.sanitized;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Parsed templates of a warm container, keyed by the SHA-256 of the PDF bytes, so a template that comes back is
+// not parsed again. LRU, bounded by estimated bytes rather than entries: TEMPLATE_CACHE_MB (default 64, 0 turns
+// the cache off). Evicted templates are closed; Lambda runs one request per container, so none is in use then.
+final class TemplateCache {
+
+    // Parsed objects plus the raw streams in the scratch buffers, roughly three times the file
+    private static final int BYTES_PER_FILE_BYTE = 3;
+
+    private final long capacityBytes;
+    private final LinkedHashMap<String, Template> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> sizes = new HashMap<>();
+    private long sizeBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    TemplateCache(long capacityBytes) {
+        this.capacityBytes = capacityBytes;
+    }
+
+    static TemplateCache fromEnvironment() {
+        String megabytes = System.getenv("TEMPLATE_CACHE_MB");
+        return new TemplateCache((megabytes != null ? Long.parseLong(megabytes) : 64) * 1024 * 1024);
+    }
+
+    boolean enabled() {
+        return capacityBytes > 0;
+    }
+
+    // The cached template for these bytes, parsed and added on a miss; null when it does not fit at all
+    Template get(byte[] pdf) throws IOException {
+        long estimate = (long) pdf.length * BYTES_PER_FILE_BYTE;
+        if (estimate > capacityBytes) {
+            return null;
+        }
+        return get(sha256(pdf), estimate, () -> PDDocument.load(pdf));
+    }
+
+    // The same for a file, sized before anything is read and hashed as a stream, so a hit never copies the file onto
+    // the heap. A miss parses it from a stream as well: the cached document keeps no handle on a file that the
+    // request may delete or replace.
+    Template get(Path file) throws IOException {
+        long estimate = Files.size(file) * BYTES_PER_FILE_BYTE;
+        if (estimate > capacityBytes) {
+            return null;
+        }
+        return get(sha256(file), estimate, () -> {
+            try (InputStream input = Files.newInputStream(file)) {
+                return PDDocument.load(input);
+            }
+        });
+    }
+
+    private interface Loader {
+        PDDocument load() throws IOException;
+    }
+
+    private Template get(String key, long estimate, Loader loader) throws IOException {
+        synchronized (this) {
+            Template template = entries.get(key);
+            if (template != null) {
+                hits++;
+                return template;
+            }
+            misses++;
+        }
+
+        // Parse outside the lock
+        Template parsed = new Template(loader.load(), true);
+        synchronized (this) {
+            Template raced = entries.get(key);
+            if (raced != null) {
+                parsed.close();
+                return raced;
+            }
+            entries.put(key, parsed);
+            sizes.put(key, estimate);
+            sizeBytes += estimate;
+            evict(key);
+            return parsed;
+        }
+    }
+
+    // Least recently used first, never the entry just added
+    private void evict(String keep) throws IOException {
+        Iterator<Map.Entry<String, Template>> eldest = entries.entrySet().iterator();
+        while (sizeBytes > capacityBytes && eldest.hasNext()) {
+            Map.Entry<String, Template> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            eldest.remove();
+            sizeBytes -= sizes.remove(entry.getKey());
+            evictions++;
+            entry.getValue().close();
+        }
+    }
+
+    // Empty, with the counters at zero; the templates are closed
+    synchronized void clear() {
+        for (Template template : entries.values()) {
+            try {
+                template.close();
+            } catch (IOException ignored) {
+            }
+        }
+        entries.clear();
+        sizes.clear();
+        sizeBytes = 0;
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Template cache: " + entries.size() + " templates, " + sizeBytes / 1024 + " of " + capacityBytes / 1024
+                + " KB, hits " + hits + ", misses " + misses + ", evictions " + evictions;
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest = digest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream input = Files.newInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static String sha256(byte[] bytes) {
+        return hex(digest().digest(bytes));
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -10,6 +10,8 @@ import org.apache.poi.xwpf.usermodel.XWPFTableRow;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Base64;
 
 public class Main implements RequestHandler<QuestionnaireInput, String> {
@@ -17,58 +19,79 @@ public class Main implements RequestHandler<QuestionnaireInput, String> {
     @Override
     public String handleRequest(QuestionnaireInput input, Context context) {
         try {
+            // Optional: template and/or result by reference (store://key, or a path or file: URI inside the document store) instead of inline base64
+            if (input.getDocumentRef() != null || input.getOutputRef() != null) {
+                return populateByReference(input);
+            }
 
             byte[] docxBytes = Base64.getDecoder().decode(input.getDocxBase64());
-            XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(docxBytes));
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            populateQuestionnaire(new ByteArrayInputStream(docxBytes), input.getJsonInput(), outputStream);
 
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(input.getJsonInput());
-            JsonNode questionGroups = rootNode.path("Q1").path("QuestionGroup");
+            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
 
-            XWPFTable table = document.getTables().get(0);
+        } catch (Exception e) {
+            context.getLogger().log("Error processing the request: " + e.getMessage());
+            return null;
+        }
+    }
 
-            for (int i = table.getRows().size() - 1; i > 0; i--) {
-                table.removeRow(i);
-            }
+    // Returns outputRef, or the base64 result when there is none
+    private static String populateByReference(QuestionnaireInput input) throws Exception {
+        String outputRef = input.getOutputRef();
+        ByteArrayOutputStream outputStream = outputRef == null ? new ByteArrayOutputStream() : null;
+        try (InputStream docxInput = input.getDocumentRef() != null ? DocumentStore.open(input.getDocumentRef())
+                : new ByteArrayInputStream(Base64.getDecoder().decode(input.getDocxBase64()));
+             DocumentStore.Output docxOutput = outputRef != null ? DocumentStore.create(outputRef) : DocumentStore.wrap(outputStream)) {
+            populateQuestionnaire(docxInput, input.getJsonInput(), docxOutput.stream());
+            docxOutput.commit();
+        }
+        return outputRef != null ? outputRef : Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
 
+    static void populateQuestionnaire(InputStream docxInput, String jsonInput, OutputStream docxOutput) throws Exception {
+        XWPFDocument document = new XWPFDocument(docxInput);
 
-            for (JsonNode group : questionGroups) {
-                String groupName = group.path("Name").asText();
-                JsonNode questions = group.path("Question");
 
-                for (JsonNode question : questions) {
-                    String questionName = question.path("Name").asText();
-                    StringBuilder answers = new StringBuilder();
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode rootNode = objectMapper.readTree(jsonInput);
+        JsonNode questionGroups = rootNode.path("Q1").path("QuestionGroup");
 
+        XWPFTable table = document.getTables().get(0);
 
-                    for (JsonNode answer : question.path("Answer")) {
-                        if (answers.length() > 0) {
-                            answers.append(", ");
-                        }
-                        answers.append(answer.path("Name").asText());
-                    }
+        for (int i = table.getRows().size() - 1; i > 0; i--) {
+            table.removeRow(i);
+        }
 
-                    // Add a new row to the table
-                    XWPFTableRow row = table.createRow();
-                    row.getCell(0).setText(groupName);
-                    row.getCell(1).setText(questionName);
-                    row.getCell(2).setText(answers.toString());
-                }
-            }
 
+        for (JsonNode group : questionGroups) {
+            String groupName = group.path("Name").asText();
+            JsonNode questions = group.path("Question");
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.write(outputStream);
-            document.close();
+            for (JsonNode question : questions) {
+                String questionName = question.path("Name").asText();
+                StringBuilder answers = new StringBuilder();
 
 
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+                for (JsonNode answer : question.path("Answer")) {
+                    if (answers.length() > 0) {
+                        answers.append(", ");
+                    }
+                    answers.append(answer.path("Name").asText());
+                }
 
-        } catch (Exception e) {
-            context.getLogger().log("Error processing the request: " + e.getMessage());
-            return null;
+                // Add a new row to the table
+                XWPFTableRow row = table.createRow();
+                row.getCell(0).setText(groupName);
+                row.getCell(1).setText(questionName);
+                row.getCell(2).setText(answers.toString());
+            }
         }
+
+
+        document.write(docxOutput);
+        document.close();
     }
 }
 
@@ -76,6 +99,8 @@ public class Main implements RequestHandler<QuestionnaireInput, String> {
 class QuestionnaireInput {
     private String docxBase64;
     private String jsonInput;
+    private String documentRef;
+    private String outputRef;
 
 
     public String getDocxBase64() {
@@ -93,4 +118,20 @@ class QuestionnaireInput {
     public void setJsonInput(String jsonInput) {
         this.jsonInput = jsonInput;
     }
-}
\ No newline at end of file
+
+    public String getDocumentRef() {
+        return documentRef;
+    }
+
+    public void setDocumentRef(String documentRef) {
+        this.documentRef = documentRef;
+    }
+
+    public String getOutputRef() {
+        return outputRef;
+    }
+
+    public void setOutputRef(String outputRef) {
+        this.outputRef = outputRef;
+    }
+}
@@ -0,0 +1,132 @@
+package org.tags.ids;
+
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFFooter;
+import org.apache.poi.xwpf.usermodel.XWPFHeader;
+import org.apache.poi.xwpf.usermodel.XWPFHeaderFooter;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFSDT;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSdtBlock;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Visits every paragraph of a document exactly once and in document order: headers, body, footers,
+// including nested tables and block content controls (SDTs), so extraction, validation and replacement share one pass.
+final class BodyWalker {
+
+    interface ParagraphVisitor {
+        void visit(XWPFParagraph paragraph);
+    }
+
+    private BodyWalker() {
+    }
+
+    static void walk(XWPFDocument document, ParagraphVisitor visitor) {
+        for (XWPFHeader header : document.getHeaderList()) {
+            walkBody(header, visitor);
+        }
+        walkBody(document, visitor);
+        for (XWPFFooter footer : document.getFooterList()) {
+            walkBody(footer, visitor);
+        }
+    }
+
+    // Text of all runs of the paragraph, appended to a buffer the caller reuses
+    static StringBuilder runText(XWPFParagraph paragraph, StringBuilder text) {
+        text.setLength(0);
+        for (XWPFRun run : paragraph.getRuns()) {
+            for (CTText element : run.getCTR().getTList()) {
+                text.append(element.getStringValue());
+            }
+        }
+        return text;
+    }
+
+    // The w:t elements of all runs in order; a run has several when a w:tab or w:br splits its text
+    static List<CTText> textElements(XWPFParagraph paragraph) {
+        List<CTText> elements = new ArrayList<>();
+        for (XWPFRun run : paragraph.getRuns()) {
+            elements.addAll(run.getCTR().getTList());
+        }
+        return elements;
+    }
+
+    static void setText(CTText element, String text) {
+        element.setStringValue(text);
+        // Word trims leading and trailing spaces unless the w:t preserves them
+        if (!text.isEmpty() && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)))) {
+            element.setSpace(SpaceAttribute.Space.PRESERVE);
+        }
+    }
+
+    private static void walkBody(IBody body, ParagraphVisitor visitor) {
+        int sdtIndex = 0;
+        for (IBodyElement element : body.getBodyElements()) {
+            if (element instanceof XWPFParagraph) {
+                visitor.visit((XWPFParagraph) element);
+            } else if (element instanceof XWPFTable) {
+                walkTable((XWPFTable) element, visitor);
+            } else if (element instanceof XWPFSDT) {
+                // POI only exposes the text of a content control, so its paragraphs are read from the XML
+                CTSdtBlock sdt = sdtBlock(body, sdtIndex++);
+                if (sdt != null && sdt.getSdtContent() != null) {
+                    walkSdtContent(sdt.getSdtContent(), body, visitor);
+                }
+            }
+        }
+    }
+
+    private static void walkTable(XWPFTable table, ParagraphVisitor visitor) {
+        for (XWPFTableRow row : table.getRows()) {
+            for (XWPFTableCell cell : row.getTableCells()) {
+                walkBody(cell, visitor);
+            }
+        }
+    }
+
+    private static void walkSdtContent(XmlObject content, IBody body, ParagraphVisitor visitor) {
+        try (XmlCursor cursor = content.newCursor()) {
+            if (!cursor.toFirstChild()) {
+                return;
+            }
+            do {
+                XmlObject child = cursor.getObject();
+                if (child instanceof CTP) {
+                    visitor.visit(new XWPFParagraph((CTP) child, body));
+                } else if (child instanceof CTTbl) {
+                    walkTable(new XWPFTable((CTTbl) child, body), visitor);
+                } else if (child instanceof CTSdtBlock && ((CTSdtBlock) child).getSdtContent() != null) {
+                    walkSdtContent(((CTSdtBlock) child).getSdtContent(), body, visitor);
+                }
+            } while (cursor.toNextSibling());
+        }
+    }
+
+    // The n-th XWPFSDT of a body is the n-th w:sdt child of its XML
+    private static CTSdtBlock sdtBlock(IBody body, int index) {
+        List<CTSdtBlock> sdts;
+        if (body instanceof XWPFDocument) {
+            sdts = ((XWPFDocument) body).getDocument().getBody().getSdtList();
+        } else if (body instanceof XWPFTableCell) {
+            sdts = ((XWPFTableCell) body).getCTTc().getSdtList();
+        } else if (body instanceof XWPFHeaderFooter) {
+            sdts = ((XWPFHeaderFooter) body)._getHdrFtr().getSdtList();
+        } else {
+            return null;
+        }
+        return index < sdts.size() ? sdts.get(index) : null;
+    }
+}
@@ -0,0 +1,307 @@
+package org.tags.ids;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// A DOCX template compiled once for repeated rendering. The body, header and footer parts become static XML
+// segments with a slot at every tag, each segment already deflated on its own; every other part is kept deflated
+// as it will be written. Rendering only writes those bytes plus the XML-escaped values into the zip: no unzipping,
+// XML parsing or document model. writeTo and read store the compiled form, e.g. under a documentRef.
+// Tags are found by TagScanner, so the JSON keys must be tags: {{name}}, and also {tag}} and {{tag} when compiled
+// with tolerantTags, looked up by name as in that mode. A tag without a value is written back whole where it starts.
+public final class CompiledTemplate {
+
+    private static final int MAGIC = 0x44435431; // "DCT1"
+    private static final byte[] FINAL_BLOCK = finalBlock();
+
+    private final boolean tolerantTags;
+    private final List<Part> parts;
+
+    private CompiledTemplate(boolean tolerantTags, List<Part> parts) {
+        this.tolerantTags = tolerantTags;
+        this.parts = parts;
+    }
+
+    public static CompiledTemplate compile(InputStream docxInput, boolean tolerantTags) throws IOException, XMLStreamException {
+        ZipInputStream zipInput = new ZipInputStream(docxInput);
+        List<Part> parts = new ArrayList<>();
+        ZipEntry entry;
+        while ((entry = zipInput.getNextEntry()) != null) {
+            byte[] content = zipInput.readAllBytes();
+            if (StreamingDocxReplacer.TEXT_PARTS.matcher(entry.getName()).matches()) {
+                ByteArrayOutputStream xml = new ByteArrayOutputStream(content.length);
+                List<Integer> positions = new ArrayList<>();
+                List<String[]> slots = new ArrayList<>();
+                StreamingDocxReplacer.compilePart(new ByteArrayInputStream(content), xml, tolerantTags, (tag, name) -> {
+                    positions.add(xml.size());
+                    slots.add(new String[]{tag, name});
+                });
+                if (!slots.isEmpty()) {
+                    parts.add(Part.templated(entry.getName(), xml.toByteArray(), positions, slots));
+                    continue;
+                }
+            }
+            parts.add(Part.untouched(entry.getName(), content));
+        }
+        return new CompiledTemplate(tolerantTags, parts);
+    }
+
+    public void render(JsonNode rootNode, OutputStream docxOutput) throws IOException {
+        render(values(rootNode), docxOutput);
+    }
+
+    private void render(Map<String, String> values, OutputStream docxOutput) throws IOException {
+        RawZipWriter zip = new RawZipWriter(docxOutput);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            for (Part part : parts) {
+                if (part.slots == null) {
+                    zip.addEntry(part.name, part.method, part.crc, part.size, part.data, part.data.length);
+                } else {
+                    renderPart(part, values, deflater, zip);
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        zip.finish();
+    }
+
+    private void renderPart(Part part, Map<String, String> values, Deflater deflater, RawZipWriter zip) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        long size = 0;
+        for (int k = 0; k < part.segments.length; k++) {
+            crc.update(part.segments[k]);
+            size += part.segments[k].length;
+            compressed.write(part.deflatedSegments[k]);
+            if (k == part.slots.length) {
+                break;
+            }
+
+            String[] slot = part.slots[k];
+            String value = values.get(tolerantTags ? slot[1] : slot[0]);
+            byte[] valueBytes = (value != null ? escape(value) : escape(slot[0])).getBytes(StandardCharsets.UTF_8);
+            if (valueBytes.length > 0) {
+                crc.update(valueBytes);
+                size += valueBytes.length;
+                deflate(deflater, valueBytes, compressed);
+            }
+        }
+        compressed.write(FINAL_BLOCK);
+        zip.addEntry(part.name, ZipEntry.DEFLATED, crc.getValue(), size, compressed.toByteArray(), compressed.size());
+    }
+
+    // Values by tag text, or by tag name for tolerant templates, first key wins as in the matchers
+    private Map<String, String> values(JsonNode rootNode) {
+        Map<String, String> values = new HashMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            values.putIfAbsent(tolerantTags ? TolerantTagMatcher.tagName(entry.getKey()) : entry.getKey(), entry.getValue().asText());
+        }
+        return values;
+    }
+
+    public void writeTo(OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeBoolean(tolerantTags);
+        data.writeInt(parts.size());
+        for (Part part : parts) {
+            data.writeUTF(part.name);
+            data.writeInt(part.method);
+            data.writeLong(part.crc);
+            data.writeLong(part.size);
+            writeBytes(data, part.data);
+            data.writeInt(part.slots == null ? -1 : part.slots.length);
+            if (part.slots != null) {
+                for (int k = 0; k < part.segments.length; k++) {
+                    writeBytes(data, part.segments[k]);
+                    writeBytes(data, part.deflatedSegments[k]);
+                }
+                for (String[] slot : part.slots) {
+                    data.writeUTF(slot[0]);
+                    data.writeUTF(slot[1]);
+                }
+            }
+        }
+        data.flush();
+    }
+
+    public static CompiledTemplate read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a compiled template");
+        }
+        boolean tolerantTags = data.readBoolean();
+        int partCount = data.readInt();
+        List<Part> parts = new ArrayList<>(partCount);
+        for (int p = 0; p < partCount; p++) {
+            Part part = new Part(data.readUTF());
+            part.method = data.readInt();
+            part.crc = data.readLong();
+            part.size = data.readLong();
+            part.data = readBytes(data);
+            int slotCount = data.readInt();
+            if (slotCount >= 0) {
+                part.segments = new byte[slotCount + 1][];
+                part.deflatedSegments = new byte[slotCount + 1][];
+                for (int k = 0; k <= slotCount; k++) {
+                    part.segments[k] = readBytes(data);
+                    part.deflatedSegments[k] = readBytes(data);
+                }
+                part.slots = new String[slotCount][];
+                for (int k = 0; k < slotCount; k++) {
+                    part.slots[k] = new String[]{data.readUTF(), data.readUTF()};
+                }
+            }
+            parts.add(part);
+        }
+        return new CompiledTemplate(tolerantTags, parts);
+    }
+
+    // One zip entry: untouched (data is the entry as written) or templated (segments around slots)
+    private static final class Part {
+        final String name;
+        int method;
+        long crc;
+        long size;
+        byte[] data = new byte[0];
+        byte[][] segments;
+        byte[][] deflatedSegments;
+        String[][] slots;
+
+        Part(String name) {
+            this.name = name;
+        }
+
+        static Part untouched(String name, byte[] content) {
+            Part part = new Part(name);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            part.crc = crc.getValue();
+            part.size = content.length;
+
+            // Media is usually compressed already, then it is stored as is
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try {
+                deflater.setInput(content);
+                deflater.finish();
+                byte[] buffer = new byte[64 * 1024];
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } finally {
+                deflater.end();
+            }
+            if (compressed.size() < content.length) {
+                part.method = ZipEntry.DEFLATED;
+                part.data = compressed.toByteArray();
+            } else {
+                part.method = ZipEntry.STORED;
+                part.data = content;
+            }
+            return part;
+        }
+
+        static Part templated(String name, byte[] xml, List<Integer> positions, List<String[]> slots) {
+            Part part = new Part(name);
+            part.method = ZipEntry.DEFLATED;
+            part.segments = new byte[slots.size() + 1][];
+            part.deflatedSegments = new byte[slots.size() + 1][];
+            part.slots = slots.toArray(new String[0][]);
+
+            // Full flushes make every segment a run of complete deflate blocks, so segments and values can be
+            // concatenated in any combination
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                int from = 0;
+                for (int k = 0; k <= slots.size(); k++) {
+                    int to = k < slots.size() ? positions.get(k) : xml.length;
+                    part.segments[k] = Arrays.copyOfRange(xml, from, to);
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    deflate(deflater, part.segments[k], compressed);
+                    part.deflatedSegments[k] = compressed.toByteArray();
+                    from = to;
+                }
+            } finally {
+                deflater.end();
+            }
+            return part;
+        }
+    }
+
+    private static void deflate(Deflater deflater, byte[] input, ByteArrayOutputStream output) {
+        deflater.setInput(input);
+        byte[] buffer = new byte[8 * 1024];
+        int length;
+        do {
+            length = deflater.deflate(buffer, 0, buffer.length, Deflater.FULL_FLUSH);
+            output.write(buffer, 0, length);
+        } while (length == buffer.length);
+    }
+
+    // The empty last block that ends every templated part
+    private static byte[] finalBlock() {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.finish();
+            byte[] buffer = new byte[16];
+            return Arrays.copyOf(buffer, deflater.deflate(buffer));
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // A value as text content: XML markup escaped, characters XML does not allow replaced as in the other paths
+    private static String escape(String value) {
+        value = XmlText.sanitize(value);
+        StringBuilder escaped = null;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            String entity = ch == '&' ? "&amp;" : ch == '<' ? "&lt;" : ch == '>' ? "&gt;" : null;
+            if (entity != null && escaped == null) {
+                escaped = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (escaped != null) {
+                if (entity != null) {
+                    escaped.append(entity);
+                } else {
+                    escaped.append(ch);
+                }
+            }
+        }
+        return escaped != null ? escaped.toString() : value;
+    }
+
+    private static void writeBytes(DataOutputStream data, byte[] bytes) throws IOException {
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream data) throws IOException {
+        byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return bytes;
+    }
+}
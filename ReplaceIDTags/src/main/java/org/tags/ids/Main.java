@@ -6,26 +6,62 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
-import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Base64;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 public class Main implements RequestHandler<Map<String, String>, String> {
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    // Compile a template for repeated rendering, and render one compiled before (see CompiledTemplate)
+    static final String COMPILE_TEMPLATE = "compileTemplate";
+    static final String TEMPLATE_REF = "templateRef";
+
+    static {
+        // Warm up during the init phase, after OBJECT_MAPPER is set
+        Priming.prime();
+    }
+
     @Override
     public String handleRequest(Map<String, String> input, Context context) {
         try {
             String base64Docx = input.get("base64Docx");
             String jsonInput = input.get("jsonInput");
+            // Optional: also replace the malformed {tag}} and {{tag} forms
+            boolean tolerantTags = Boolean.parseBoolean(input.get("tolerantTags"));
+            // Optional: stream the XML parts instead of loading the whole document (large templates)
+            boolean streaming = Boolean.parseBoolean(input.get("streaming"));
+
+            // Optional: read the template from documentRef and/or write the result to outputRef instead of inline base64
+            String documentRef = input.get(DocumentStore.DOCUMENT_REF);
+            String outputRef = input.get(DocumentStore.OUTPUT_REF);
+
+            // Optional: compileTemplate returns the compiled template instead of a document (or writes it to
+            // outputRef), templateRef renders jsonInput into a template compiled before
+            if (Boolean.parseBoolean(input.get(COMPILE_TEMPLATE))) {
+                return compileTemplateByReference(base64Docx, documentRef, outputRef, tolerantTags);
+            }
+            if (input.get(TEMPLATE_REF) != null) {
+                return renderTemplateByReference(input.get(TEMPLATE_REF), outputRef, jsonInput);
+            }
+
+            if (documentRef != null || outputRef != null) {
+                return replaceTagsByReference(base64Docx, documentRef, outputRef, jsonInput, tolerantTags, streaming);
+            }
+
+            if (streaming) {
+                return replaceTagsInDocxStreaming(base64Docx, jsonInput, tolerantTags);
+            }
 
             // Call the function to replace tags in the DOCX document
-            return replaceTagsInDocx(base64Docx, jsonInput);
+            return replaceTagsInDocx(base64Docx, jsonInput, tolerantTags);
         } catch (Exception e) {
             context.getLogger().log("Error: " + e.getMessage());
             return "Error processing request";
@@ -33,129 +69,136 @@ public class Main implements RequestHandler<Map<String, String>, String> {
     }
 
     public static String replaceTagsInDocx(String base64Docx, String jsonInput) throws Exception {
+        return replaceTagsInDocx(base64Docx, jsonInput, false);
+    }
+
+    public static String replaceTagsInDocx(String base64Docx, String jsonInput, boolean tolerantTags) throws Exception {
         // Decode Base64
         byte[] docBytes = Base64.getDecoder().decode(base64Docx);
 
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        replaceTagsInDocx(new ByteArrayInputStream(docBytes), outputStream, jsonInput, tolerantTags);
+        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
+
+    public static void replaceTagsInDocx(InputStream docxInput, OutputStream docxOutput, String jsonInput, boolean tolerantTags) throws Exception {
         // Load DOCX document
-        try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(docBytes))) {
+        try (XWPFDocument document = new XWPFDocument(docxInput)) {
             // Parsing JSON
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(jsonInput);
+            JsonNode rootNode = OBJECT_MAPPER.readTree(jsonInput);
 
-            // Replace tags with values from JSON
-            replaceTagsInDocument(document, rootNode);
+            // Compile the JSON keys once, then replace tags with values from JSON
+            replaceTagsInDocument(document, compileMatcher(rootNode, tolerantTags));
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            document.write(outputStream);
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            document.write(docxOutput);
         }
     }
-/*     //This is the new method to suport invalid inputs; this is commented to be activated in case to support other kind of tags
-    private static String replaceTags(String text, JsonNode rootNode) {
-        // Regex pattern to match all three tag formats: {{tag}}, {tag}}, and {{tag}.
-        String regex = "(\\{\\{([^\}]+))\\}\\}|\\{([^\}]+)\\}\\}|\\{\\{([^\}]+)\\})";
-
-        // Iterate json
-        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> entry = it.next();
-            String tag = entry.getKey(); // {{tag}},{tag}},}}tag{{ or {{tag}
-            String replacement = entry.getValue().asText(); //value
-
-            System.out.println("Replacing: " + tag + " with " + replacement);
-
-            // Create a Pattern object
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(text);
-
-            // Use Matcher to find matches and replace them
-            StringBuffer sb = new StringBuffer();
-            while (matcher.find()) {
-                // Check which tag format was matched
-                String matchedTag = matcher.group(0); // Get the full match
-                if (matchedTag.contains("{{") && matchedTag.contains("}}")) {
-                    // for {{tag}}
-                    matchedTag = matchedTag.replace(tag, replacement);
-                } else if (matchedTag.contains("{") && matchedTag.contains("}}")) {
-                    // for {tag}}
-                    matchedTag = matchedTag.replace(tag, replacement);
-                    matchedTag = matchedTag.replace(tag, replacement);
-                } else if (matchedTag.contains("{{") && !matchedTag.contains("}}")) {
-                    // for {{tag}
-                    matchedTag = matchedTag.replace(tag, replacement);
-                }
-
-                // Append the modified match to the StringBuffer
-                matcher.appendReplacement(sb, matchedTag);
+
+    // Either side can be a reference; returns outputRef, or the base64 result when there is none
+    private static String replaceTagsByReference(String base64Docx, String documentRef, String outputRef, String jsonInput,
+                                                 boolean tolerantTags, boolean streaming) throws Exception {
+        ByteArrayOutputStream outputStream = outputRef == null ? new ByteArrayOutputStream() : null;
+        try (InputStream docxInput = documentRef != null ? DocumentStore.open(documentRef)
+                : new ByteArrayInputStream(Base64.getDecoder().decode(base64Docx));
+             DocumentStore.Output docxOutput = outputRef != null ? DocumentStore.create(outputRef) : DocumentStore.wrap(outputStream)) {
+            if (streaming) {
+                replaceTagsInDocxStreaming(docxInput, docxOutput.stream(), jsonInput, tolerantTags);
+            } else {
+                replaceTagsInDocx(docxInput, docxOutput.stream(), jsonInput, tolerantTags);
             }
-            // Append the remaining part of the string
-            matcher.appendTail(sb);
+            docxOutput.commit();
+        }
+        return outputRef != null ? outputRef : Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
+
+    // Compile once, render many times: the same result as replaceTagsInDocx for tag keys, without parsing anything
+    public static CompiledTemplate compileTemplate(InputStream docxInput, boolean tolerantTags) throws Exception {
+        return CompiledTemplate.compile(docxInput, tolerantTags);
+    }
 
-            // Update the text with all replacements done
-            text = sb.toString();
+    public static void renderTemplate(CompiledTemplate template, String jsonInput, OutputStream docxOutput) throws Exception {
+        template.render(OBJECT_MAPPER.readTree(jsonInput), docxOutput);
+    }
+
+    static CompiledTemplate readTemplate(String templateRef) throws Exception {
+        try (InputStream templateInput = DocumentStore.open(templateRef)) {
+            return CompiledTemplate.read(templateInput);
         }
+    }
 
-        return text;
-    }*/
-    private static void replaceTagsInDocument(XWPFDocument document, JsonNode rootNode) {
-        // Replace tags in paragraphs
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            replaceTextInParagraph(paragraph, rootNode);
+    private static String compileTemplateByReference(String base64Docx, String documentRef, String outputRef, boolean tolerantTags) throws Exception {
+        CompiledTemplate template;
+        try (InputStream docxInput = documentRef != null ? DocumentStore.open(documentRef)
+                : new ByteArrayInputStream(Base64.getDecoder().decode(base64Docx))) {
+            template = compileTemplate(docxInput, tolerantTags);
         }
+        return writeResult(outputRef, template::writeTo);
+    }
+
+    private static String renderTemplateByReference(String templateRef, String outputRef, String jsonInput) throws Exception {
+        CompiledTemplate template = readTemplate(templateRef);
+        return writeResult(outputRef, docxOutput -> renderTemplate(template, jsonInput, docxOutput));
+    }
 
-        // Replace tags in tables
-        document.getTables().forEach(table -> {
-            for (int rowIndex = 0; rowIndex < table.getNumberOfRows(); rowIndex++) {
-                for (int cellIndex = 0; cellIndex < table.getRow(rowIndex).getTableCells().size(); cellIndex++) {
-                    XWPFTableCell cell = table.getRow(rowIndex).getCell(cellIndex);
-                    for (XWPFParagraph cellParagraph : cell.getParagraphs()) {
-                        replaceTextInParagraph(cellParagraph, rootNode);
-                    }
-                }
+    // Writes to outputRef and returns it, or returns what was written as base64
+    private static String writeResult(String outputRef, ResultWriter writer) throws Exception {
+        if (outputRef != null) {
+            try (DocumentStore.Output output = DocumentStore.create(outputRef)) {
+                writer.write(output.stream());
+                output.commit();
             }
-        });
+            return outputRef;
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.write(outputStream);
+        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
     }
 
-    private static void replaceTextInParagraph(XWPFParagraph paragraph, JsonNode rootNode) {
-        String paragraphText = paragraph.getText();
-        System.out.println("Paragraph/Text Cell Text: " + paragraphText);
+    private interface ResultWriter {
+        void write(OutputStream output) throws Exception;
+    }
 
-        if (paragraphText != null) {
-            String newText = replaceTags(paragraphText, rootNode);
-            System.out.println("Original Text: " + paragraphText);
-            System.out.println("New Text: " + newText);
+    // Same result as replaceTagsInDocx, but the document is never loaded into an XWPFDocument
+    public static String replaceTagsInDocxStreaming(String base64Docx, String jsonInput, boolean tolerantTags) throws Exception {
+        byte[] docBytes = Base64.getDecoder().decode(base64Docx);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(docBytes.length);
+        replaceTagsInDocxStreaming(new ByteArrayInputStream(docBytes), outputStream, jsonInput, tolerantTags);
+        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
 
-            if (!newText.equals(paragraphText)) {
-                for (int i = paragraph.getRuns().size() - 1; i >= 0; i--) {
-                    paragraph.removeRun(i);
-                }
+    public static void replaceTagsInDocxStreaming(InputStream docxInput, OutputStream docxOutput, String jsonInput, boolean tolerantTags) throws Exception {
+        TagMatcher matcher = compileMatcher(OBJECT_MAPPER.readTree(jsonInput), tolerantTags);
+        StreamingDocxReplacer.replaceTags(docxInput, docxOutput, matcher);
+    }
 
-                String[] parts = newText.split("(?<=})|(?=\\{)");
-                for (String part : parts) {
-                    XWPFRun run = paragraph.createRun();
-                    run.setText(part);
-                }
-            } else {
-                System.out.println("No replacement occurred; newText is the same as paragraphText.");
-            }
-        }
+    // Exact keys go through the automaton; the tolerant mode scans for every tag form and looks each one up by name
+    private static TagMatcher compileMatcher(JsonNode rootNode, boolean tolerantTags) {
+        return tolerantTags ? new TolerantTagMatcher(rootNode) : TagReplacer.compile(rootNode);
     }
 
-    private static String replaceTags(String text, JsonNode rootNode) {
-        // Iterate through the rootNode which now contains direct key-value pairs
-        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> entry = it.next();
-            String tag = entry.getKey(); // for example {{tagname}}
-            String replacement = entry.getValue().asText(); // for example "neo24 test"
+    private static void replaceTagsInDocument(XWPFDocument document, TagMatcher matcher) {
+        // One pass over headers, body, tables (nested too), content controls and footers
+        BodyWalker.walk(document, paragraph -> replaceTextInParagraph(paragraph, matcher));
+    }
 
-            System.out.println("Replacing: " + tag + " with " + replacement);
+    // Rewrites only the text elements holding a tag (tags split across runs and w:t elements included); paragraphs
+    // without a tag are not touched
+    private static void replaceTextInParagraph(XWPFParagraph paragraph, TagMatcher matcher) {
+        List<CTText> elements = BodyWalker.textElements(paragraph);
+        String[] texts = new String[elements.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = elements.get(i).getStringValue();
+        }
 
-            // Replace the tag in the text if it exists
-            if (text.contains(tag)) {
-                text = text.replace(tag, replacement);
-            } else {
-                System.out.println("Tag " + tag + " not found in text.");
+        String[] newTexts = SegmentRewriter.rewrite(texts, matcher);
+        if (newTexts == null) {
+            return;
+        }
+
+        for (int i = 0; i < texts.length; i++) {
+            if (!newTexts[i].equals(texts[i])) {
+                BodyWalker.setText(elements.get(i), newTexts[i]);
             }
         }
-        return text;
     }
 }
@@ -0,0 +1,153 @@
+package org.tags.ids;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+// Runs a tiny DOCX through the handlers while the handler class initializes, so POI, XMLBeans, StAX and Jackson
+// are loaded and warmed during the Lambda init phase instead of the first request. PRIMING=false turns it off.
+// main() is the training run for the AppCDS archive (appcds profile).
+final class Priming {
+
+    private static boolean primed;
+
+    private Priming() {
+    }
+
+    static synchronized void prime() {
+        if (primed || "false".equalsIgnoreCase(System.getenv("PRIMING"))) {
+            return;
+        }
+        primed = true;
+
+        try {
+            Context context = new PrimingContext();
+            Map<String, String> input = new HashMap<>();
+            input.put("base64Docx", Base64.getEncoder().encodeToString(sampleDocx()));
+            input.put("jsonInput", "{\"{{name}}\":\"Primed\",\"{{city}}\":\"Nowhere\"}");
+
+            // DOM and streaming paths, exact and tolerant tags
+            Main main = new Main();
+            main.handleRequest(input, context);
+            input.put("tolerantTags", "true");
+            main.handleRequest(input, context);
+            input.put("streaming", "true");
+            main.handleRequest(input, context);
+
+            // Stream handler request parsing and response writing
+            String request = "{\"base64Docx\":\"" + input.get("base64Docx") + "\",\"jsonInput\":\"{}\"}";
+            new StreamHandler().handleRequest(new ByteArrayInputStream(request.getBytes(StandardCharsets.UTF_8)),
+                    new ByteArrayOutputStream(), context);
+        } catch (Exception e) {
+            // Priming only warms up, it must never keep the function from starting
+            System.err.println("Priming failed: " + e);
+        }
+    }
+
+    // Tag split across runs, a table cell and a header, so every branch of the walker runs once
+    private static byte[] sampleDocx() throws IOException {
+        try (XWPFDocument document = new XWPFDocument()) {
+            document.createHeader(HeaderFooterType.DEFAULT)
+                    .createParagraph().createRun().setText("{{city}}");
+
+            XWPFParagraph paragraph = document.createParagraph();
+            paragraph.createRun().setText("Hello {{na");
+            paragraph.createRun().setText("me}}, {city}}");
+
+            XWPFTable table = document.createTable(1, 1);
+            table.getRow(0).getCell(0).setText("{{name}}");
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            document.write(output);
+            return output.toByteArray();
+        }
+    }
+
+    // A Context as Lambda passes one, so the handlers run their logging paths too; what they log goes to stderr
+    private static final class PrimingContext implements Context {
+
+        private static final LambdaLogger LOGGER = new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                System.err.println("Priming: " + message);
+            }
+
+            @Override
+            public void log(byte[] message) {
+                log(new String(message, StandardCharsets.UTF_8));
+            }
+        };
+
+        @Override
+        public String getAwsRequestId() {
+            return "priming";
+        }
+
+        @Override
+        public String getLogGroupName() {
+            return "priming";
+        }
+
+        @Override
+        public String getLogStreamName() {
+            return "priming";
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "priming";
+        }
+
+        @Override
+        public String getFunctionVersion() {
+            return "$LATEST";
+        }
+
+        @Override
+        public String getInvokedFunctionArn() {
+            return "priming";
+        }
+
+        @Override
+        public CognitoIdentity getIdentity() {
+            return null;
+        }
+
+        @Override
+        public ClientContext getClientContext() {
+            return null;
+        }
+
+        @Override
+        public int getRemainingTimeInMillis() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int getMemoryLimitInMB() {
+            return 0;
+        }
+
+        @Override
+        public LambdaLogger getLogger() {
+            return LOGGER;
+        }
+    }
+
+    public static void main(String[] args) {
+        prime();
+    }
+}
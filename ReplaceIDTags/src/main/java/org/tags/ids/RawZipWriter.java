@@ -0,0 +1,96 @@
+package org.tags.ids;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// Writes zip entries whose data is already compressed (ZipOutputStream always compresses itself), so a rendered
+// CompiledTemplate copies its untouched parts as they are. No zip64: entries and archive stay below 4 GB.
+final class RawZipWriter {
+
+    private static final int VERSION = 20;
+    private static final int UTF8_NAMES = 0x0800;
+    // 1980-01-01 00:00, the zip epoch; every entry gets it so renders are byte for byte reproducible
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private final OutputStream output;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long offset;
+    private int entries;
+
+    RawZipWriter(OutputStream output) {
+        this.output = output;
+    }
+
+    // data holds the entry as stored (method STORED) or as raw deflate blocks (method DEFLATED)
+    void addEntry(String name, int method, long crc, long size, byte[] data, int length) throws IOException {
+        if (size > 0xFFFFFFFFL || offset > 0xFFFFFFFFL) {
+            throw new IOException("Entry too large for a zip without zip64: " + name);
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(30 + nameBytes.length);
+        writeInt(header, 0x04034b50);
+        writeShort(header, VERSION);
+        writeCommon(header, method, crc, size, length, nameBytes.length);
+        header.write(nameBytes);
+        header.writeTo(output);
+        output.write(data, 0, length);
+
+        writeInt(centralDirectory, 0x02014b50);
+        writeShort(centralDirectory, VERSION);
+        writeShort(centralDirectory, VERSION);
+        writeCommon(centralDirectory, method, crc, size, length, nameBytes.length);
+        writeShort(centralDirectory, 0); // comment length
+        writeShort(centralDirectory, 0); // disk
+        writeShort(centralDirectory, 0); // internal attributes
+        writeInt(centralDirectory, 0); // external attributes
+        writeInt(centralDirectory, (int) offset);
+        centralDirectory.write(nameBytes);
+
+        offset += header.size() + length;
+        entries++;
+    }
+
+    // Writes the central directory; the output is not closed
+    void finish() throws IOException {
+        ByteArrayOutputStream end = new ByteArrayOutputStream(22);
+        writeInt(end, 0x06054b50);
+        writeShort(end, 0);
+        writeShort(end, 0);
+        writeShort(end, entries);
+        writeShort(end, entries);
+        writeInt(end, centralDirectory.size());
+        writeInt(end, (int) offset);
+        writeShort(end, 0);
+
+        centralDirectory.writeTo(output);
+        end.writeTo(output);
+        output.flush();
+    }
+
+    // Flags through name length, the same in the local header and the central directory
+    private static void writeCommon(ByteArrayOutputStream out, int method, long crc, long size, int compressedSize, int nameLength) {
+        writeShort(out, UTF8_NAMES);
+        writeShort(out, method);
+        writeShort(out, DOS_TIME);
+        writeShort(out, DOS_DATE);
+        writeInt(out, (int) crc);
+        writeInt(out, compressedSize);
+        writeInt(out, (int) size);
+        writeShort(out, nameLength);
+        writeShort(out, 0); // extra field length
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value);
+        writeShort(out, value >>> 16);
+    }
+}
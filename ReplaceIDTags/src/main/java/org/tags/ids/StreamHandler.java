@@ -0,0 +1,71 @@
+package org.tags.ids;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Same request and response as Main, but the base64 document is decoded from the request stream and the result
+// is encoded into the response stream, so neither the base64 text nor the decoded bytes are held on the heap.
+// documentRef, outputRef, compileTemplate and templateRef work as in Main.
+public class StreamHandler implements RequestStreamHandler {
+
+    static {
+        Priming.prime();
+    }
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        Path result = Files.createTempFile("result", ".docx");
+        try {
+            String outputRef;
+            try (StreamingRequest request = StreamingRequest.read(input, "base64Docx")) {
+                String jsonInput = request.get("jsonInput");
+                boolean tolerantTags = Boolean.parseBoolean(request.get("tolerantTags"));
+                boolean streaming = Boolean.parseBoolean(request.get("streaming"));
+                outputRef = request.get(DocumentStore.OUTPUT_REF);
+                String templateRef = request.get(Main.TEMPLATE_REF);
+                if (templateRef == null && request.document() == null) {
+                    throw new IllegalArgumentException("base64Docx or documentRef is missing");
+                }
+
+                try (DocumentStore.Output docxOutput = outputRef != null ? DocumentStore.create(outputRef)
+                        : DocumentStore.wrap(new BufferedOutputStream(Files.newOutputStream(result), 64 * 1024))) {
+                    if (templateRef != null) {
+                        Main.renderTemplate(Main.readTemplate(templateRef), jsonInput, docxOutput.stream());
+                    } else {
+                        try (InputStream docxInput = new BufferedInputStream(Files.newInputStream(request.document()), 64 * 1024)) {
+                            if (Boolean.parseBoolean(request.get(Main.COMPILE_TEMPLATE))) {
+                                Main.compileTemplate(docxInput, tolerantTags).writeTo(docxOutput.stream());
+                            } else if (streaming) {
+                                Main.replaceTagsInDocxStreaming(docxInput, docxOutput.stream(), jsonInput, tolerantTags);
+                            } else {
+                                Main.replaceTagsInDocx(docxInput, docxOutput.stream(), jsonInput, tolerantTags);
+                            }
+                        }
+                    }
+                    docxOutput.commit();
+                }
+            } catch (Exception e) {
+                context.getLogger().log("Error: " + e.getMessage());
+                StreamingRequest.writeString(output, "Error processing request");
+                return;
+            }
+
+            if (outputRef != null) {
+                // The document was written to the reference, only the reference goes back
+                StreamingRequest.writeString(output, outputRef);
+            } else {
+                StreamingRequest.writeBase64(output, result);
+            }
+        } finally {
+            Files.deleteIfExists(result);
+        }
+    }
+}
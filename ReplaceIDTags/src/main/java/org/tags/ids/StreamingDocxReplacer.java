@@ -0,0 +1,334 @@
+package org.tags.ids;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartDocument;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+// Tag replacement straight from zip to zip without XWPFDocument: the body, header and footer parts are read with StAX,
+// one paragraph at a time is buffered so tags split across runs still match, and every other part is copied as is.
+// Memory depends on the largest paragraph, not on the size of the document.
+final class StreamingDocxReplacer {
+
+    private static final String WORDML_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    static final Pattern TEXT_PARTS = Pattern.compile("word/(document|header\\d*|footer\\d*)\\.xml");
+    private static final QName XML_SPACE = new QName(XMLConstants.XML_NS_URI, "space", "xml");
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private StreamingDocxReplacer() {
+    }
+
+    static void replaceTags(InputStream docxInput, OutputStream docxOutput, TagMatcher matcher) throws IOException, XMLStreamException {
+        ZipInputStream zipInput = new ZipInputStream(docxInput);
+        ZipOutputStream zipOutput = new ZipOutputStream(docxOutput);
+
+        byte[] buffer = new byte[64 * 1024];
+        ZipEntry entry;
+        while ((entry = zipInput.getNextEntry()) != null) {
+            zipOutput.putNextEntry(new ZipEntry(entry.getName()));
+
+            if (TEXT_PARTS.matcher(entry.getName()).matches()) {
+                replaceTagsInPart(new NonClosingInputStream(zipInput), new NonClosingOutputStream(zipOutput), matcher);
+            } else {
+                int bytesRead;
+                while ((bytesRead = zipInput.read(buffer)) != -1) {
+                    zipOutput.write(buffer, 0, bytesRead);
+                }
+            }
+            zipOutput.closeEntry();
+        }
+        zipOutput.finish();
+    }
+
+    private static void replaceTagsInPart(InputStream partInput, OutputStream partOutput, TagMatcher matcher) throws XMLStreamException {
+        rewritePart(partInput, partOutput, (paragraph, writer) -> paragraph.flush(writer, matcher));
+    }
+
+    // CompiledTemplate's compile step: writes the part with every tag cut out of the text and calls slots.slot at the
+    // position of each one, with the writer flushed so the bytes written so far end exactly there
+    static void compilePart(InputStream partInput, OutputStream partOutput, boolean tolerantTags, SlotSink slots) throws XMLStreamException {
+        TagScanner scanner = new TagScanner();
+        rewritePart(partInput, partOutput, (paragraph, writer) -> paragraph.compile(writer, scanner, tolerantTags, slots));
+    }
+
+    private static void rewritePart(InputStream partInput, OutputStream partOutput, ParagraphRewriter rewriter) throws XMLStreamException {
+        XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(partInput);
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(partOutput, "UTF-8");
+        ParagraphBuffer paragraph = new ParagraphBuffer();
+        int paragraphDepth = 0;
+
+        while (reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+
+            if (isWordElement(event, true, "p")) {
+                // Nested paragraphs (text boxes) close the text collected so far for the outer one
+                rewriter.rewrite(paragraph, writer);
+                paragraphDepth++;
+                paragraph.add(event);
+            } else if (isWordElement(event, false, "p")) {
+                paragraph.add(event);
+                paragraphDepth--;
+                rewriter.rewrite(paragraph, writer);
+            } else if (paragraphDepth > 0) {
+                paragraph.add(event);
+            } else if (event.isStartDocument() && ((StartDocument) event).standaloneSet()) {
+                // The writer drops standalone="yes" unless the event is created with it explicitly
+                writer.add(EVENT_FACTORY.createStartDocument("UTF-8", "1.0", ((StartDocument) event).isStandalone()));
+            } else {
+                writer.add(event);
+            }
+        }
+        rewriter.rewrite(paragraph, writer);
+
+        writer.flush();
+        reader.close();
+    }
+
+    private static boolean isWordElement(XMLEvent event, boolean start, String localName) {
+        QName name;
+        if (start && event.isStartElement()) {
+            name = event.asStartElement().getName();
+        } else if (!start && event.isEndElement()) {
+            name = event.asEndElement().getName();
+        } else {
+            return false;
+        }
+        return localName.equals(name.getLocalPart()) && WORDML_NS.equals(name.getNamespaceURI());
+    }
+
+    private interface ParagraphRewriter {
+        void rewrite(ParagraphBuffer paragraph, XMLEventWriter writer) throws XMLStreamException;
+    }
+
+    interface SlotSink {
+        // tag is the text of the tag as found, name the text between its brackets
+        void slot(String tag, String name) throws XMLStreamException;
+    }
+
+    // Events of one paragraph plus the position of every w:t and its text
+    private static final class ParagraphBuffer {
+        private final List<XMLEvent> events = new ArrayList<>();
+        private final List<int[]> textElements = new ArrayList<>(); // {start element index, characters index or -1}
+        private final List<StringBuilder> texts = new ArrayList<>();
+        private boolean inText;
+
+        void add(XMLEvent event) {
+            if (isWordElement(event, true, "t")) {
+                inText = true;
+                textElements.add(new int[]{events.size(), -1});
+                texts.add(new StringBuilder());
+            } else if (isWordElement(event, false, "t")) {
+                inText = false;
+            } else if (inText && event.isCharacters()) {
+                int[] textElement = textElements.get(textElements.size() - 1);
+                if (textElement[1] < 0) {
+                    textElement[1] = events.size();
+                }
+                texts.get(texts.size() - 1).append(event.asCharacters().getData());
+            }
+            events.add(event);
+        }
+
+        void flush(XMLEventWriter writer, TagMatcher matcher) throws XMLStreamException {
+            String[] segments = segments();
+
+            String[] rewritten = segments.length == 0 ? null : SegmentRewriter.rewrite(segments, matcher);
+            if (rewritten != null) {
+                for (int i = 0; i < segments.length; i++) {
+                    if (!rewritten[i].equals(segments[i])) {
+                        setText(textElements.get(i), rewritten[i]);
+                    }
+                }
+            }
+
+            write(writer, null, null);
+        }
+
+        // Like flush, but every tag is cut out of the text and becomes a slot where the text started. The rest of a
+        // tag split across w:t elements is cut out of the following ones, as SegmentRewriter does with the value.
+        void compile(XMLEventWriter writer, TagScanner scanner, boolean tolerantTags, SlotSink slots) throws XMLStreamException {
+            String[] segments = segments();
+            int[] ends = new int[segments.length];
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < segments.length; i++) {
+                text.append(segments[i]);
+                ends[i] = text.length();
+            }
+
+            // {start, end, nameStart, nameEnd} of each tag, in order
+            List<int[]> tags = new ArrayList<>();
+            scanner.reset(text);
+            while (scanner.find()) {
+                if (tolerantTags || scanner.isWellFormed()) {
+                    tags.add(new int[]{scanner.start(), scanner.end(), scanner.nameStart(), scanner.nameEnd()});
+                }
+            }
+
+            // Per w:t characters event: its new text, as Strings and String[]{tag, name} slots
+            Map<Integer, List<Object>> pieces = new HashMap<>();
+            int t = 0;
+            for (int i = 0; i < segments.length && !tags.isEmpty(); i++) {
+                int segmentStart = i == 0 ? 0 : ends[i - 1];
+                int segmentEnd = ends[i];
+                while (t < tags.size() && tags.get(t)[1] <= segmentStart) {
+                    t++;
+                }
+                if (t == tags.size() || tags.get(t)[0] >= segmentEnd || segmentStart == segmentEnd) {
+                    continue;
+                }
+
+                List<Object> segmentPieces = new ArrayList<>();
+                boolean slotted = false;
+                int position = segmentStart;
+                for (int k = t; k < tags.size() && tags.get(k)[0] < segmentEnd; k++) {
+                    int[] tag = tags.get(k);
+                    if (tag[0] >= segmentStart) {
+                        segmentPieces.add(text.substring(position, tag[0]));
+                        segmentPieces.add(new String[]{text.substring(tag[0], tag[1]), text.substring(tag[2], tag[3])});
+                        slotted = true;
+                    }
+                    position = Math.min(tag[1], segmentEnd);
+                }
+                segmentPieces.add(text.substring(position, segmentEnd));
+
+                if (slotted) {
+                    // The values are only known when rendering, so the spaces they may bring are always preserved
+                    replaceCharacters(textElements.get(i), null);
+                    preserveSpaces(textElements.get(i));
+                    pieces.put(textElements.get(i)[1], segmentPieces);
+                } else {
+                    StringBuilder remaining = new StringBuilder();
+                    for (Object piece : segmentPieces) {
+                        remaining.append((String) piece);
+                    }
+                    setText(textElements.get(i), remaining.toString());
+                }
+            }
+
+            write(writer, pieces, slots);
+        }
+
+        private String[] segments() {
+            String[] segments = new String[texts.size()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = texts.get(i).toString();
+            }
+            return segments;
+        }
+
+        private void write(XMLEventWriter writer, Map<Integer, List<Object>> pieces, SlotSink slots) throws XMLStreamException {
+            for (int i = 0; i < events.size(); i++) {
+                List<Object> textPieces = pieces != null ? pieces.get(i) : null;
+                if (textPieces != null) {
+                    for (Object piece : textPieces) {
+                        if (piece instanceof String) {
+                            writer.add(EVENT_FACTORY.createCharacters(XmlText.sanitize((String) piece)));
+                        } else {
+                            // An empty text event closes the w:t start tag, so the slot lands inside the element
+                            writer.add(EVENT_FACTORY.createCharacters(""));
+                            writer.flush();
+                            String[] slot = (String[]) piece;
+                            slots.slot(slot[0], slot[1]);
+                        }
+                    }
+                } else if (events.get(i) != null) {
+                    writer.add(events.get(i));
+                }
+            }
+            events.clear();
+            textElements.clear();
+            texts.clear();
+            inText = false;
+        }
+
+        private void setText(int[] textElement, String text) {
+            // Values can hold characters XML does not allow, written as POI writes them
+            replaceCharacters(textElement, EVENT_FACTORY.createCharacters(XmlText.sanitize(text)));
+
+            boolean edgeSpaces = !text.isEmpty() && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+            if (edgeSpaces) {
+                preserveSpaces(textElement);
+            }
+        }
+
+        private void replaceCharacters(int[] textElement, XMLEvent characters) {
+            int charactersIndex = textElement[1];
+            events.set(charactersIndex, characters);
+            // A w:t can be split into several character events, the first one now holds the whole text
+            for (int i = charactersIndex + 1; i < events.size() && events.get(i) != null && events.get(i).isCharacters(); i++) {
+                events.set(i, null);
+            }
+        }
+
+        private void preserveSpaces(int[] textElement) {
+            StartElement start = events.get(textElement[0]).asStartElement();
+            if (start.getAttributeByName(XML_SPACE) == null) {
+                // Word trims leading and trailing spaces unless the w:t preserves them
+                List<Attribute> attributes = new ArrayList<>();
+                for (Iterator<?> it = start.getAttributes(); it.hasNext(); ) {
+                    attributes.add((Attribute) it.next());
+                }
+                attributes.add(EVENT_FACTORY.createAttribute(XML_SPACE, "preserve"));
+                events.set(textElement[0], EVENT_FACTORY.createStartElement(start.getName(), attributes.iterator(), start.getNamespaces()));
+            }
+        }
+    }
+
+    // The part streams must not close the zip streams they are reading from and writing to
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
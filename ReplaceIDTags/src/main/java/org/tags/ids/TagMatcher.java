@@ -0,0 +1,25 @@
+package org.tags.ids;
+
+// Finds the tags in a piece of text and reports them by offset, in order and without overlaps
+public interface TagMatcher {
+
+    void findTags(CharSequence text, MatchHandler handler);
+
+    // Returns the same String instance when no tag occurs in the text
+    default String replace(String text) {
+        StringBuilder result = new StringBuilder();
+        int[] copied = {-1};
+        findTags(text, (start, end, value) -> {
+            result.append(text, Math.max(copied[0], 0), start).append(value);
+            copied[0] = end;
+        });
+        if (copied[0] < 0) {
+            return text;
+        }
+        return result.append(text, copied[0], text.length()).toString();
+    }
+
+    interface MatchHandler {
+        void onMatch(int start, int end, String value);
+    }
+}
@@ -0,0 +1,187 @@
+package org.tags.ids;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Aho-Corasick automaton built from the JSON keys, so every paragraph is rewritten in one left-to-right scan
+// no matter how many tags the request carries. Matches are leftmost-longest and never overlap.
+public final class TagReplacer implements TagMatcher {
+
+    private static final int ROOT = 0;
+
+    // Per state: sorted outgoing labels and their target states
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] fail;
+    // Length of the key ending in this state (0 when the state is not a key)
+    private final int[] keyLength;
+    // Nearest state on the fail chain that ends a key, -1 when there is none
+    private final int[] outputLink;
+    private final String[] values;
+
+    private TagReplacer(List<Map<Character, Integer>> trie, List<String> stateValues, int[] keyLength) {
+        int stateCount = trie.size();
+        this.labels = new char[stateCount][];
+        this.targets = new int[stateCount][];
+        this.fail = new int[stateCount];
+        this.keyLength = keyLength;
+        this.outputLink = new int[stateCount];
+        this.values = stateValues.toArray(new String[0]);
+
+        for (int state = 0; state < stateCount; state++) {
+            Map<Character, Integer> edges = trie.get(state);
+            char[] stateLabels = new char[edges.size()];
+            int[] stateTargets = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) { // TreeMap, so labels are sorted
+                stateLabels[i] = edge.getKey();
+                stateTargets[i] = edge.getValue();
+                i++;
+            }
+            labels[state] = stateLabels;
+            targets[state] = stateTargets;
+        }
+
+        buildFailLinks(stateCount);
+    }
+
+    // Compile the direct key/value pairs of the JSON object, for example {"{{Customer.FirstName}}": "neo24 test"}
+    public static TagReplacer compile(JsonNode rootNode) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<String> stateValues = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        stateValues.add(null);
+        int[] keyLength = new int[16];
+
+        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            String tag = entry.getKey();
+            if (tag.isEmpty()) {
+                continue;
+            }
+
+            int state = ROOT;
+            for (int i = 0; i < tag.length(); i++) {
+                Integer next = trie.get(state).get(tag.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    stateValues.add(null);
+                    trie.get(state).put(tag.charAt(i), next);
+                }
+                state = next;
+            }
+
+            if (keyLength.length < trie.size()) {
+                keyLength = Arrays.copyOf(keyLength, Math.max(trie.size(), keyLength.length * 2));
+            }
+            keyLength[state] = tag.length();
+            stateValues.set(state, entry.getValue().asText());
+        }
+
+        return new TagReplacer(trie, stateValues, Arrays.copyOf(keyLength, trie.size()));
+    }
+
+    @Override
+    public void findTags(CharSequence text, MatchHandler handler) {
+        int length = text.length();
+        // Longest key starting at each offset, only allocated once the first match shows up
+        int[] longestAt = null;
+        int[] valueAt = null;
+        int firstMatch = length;
+
+        char[] rootLabels = labels[ROOT];
+        boolean jumpToFirstLabel = rootLabels.length == 1 && text instanceof String;
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            if (state == ROOT && jumpToFirstLabel) {
+                // Every key starts with the same character (usually '{'), so jump straight to its next occurrence
+                i = ((String) text).indexOf(rootLabels[0], i);
+                if (i < 0) {
+                    break;
+                }
+            }
+            state = next(state, text.charAt(i));
+
+            int match = keyLength[state] > 0 ? state : outputLink[state];
+            while (match >= 0) {
+                if (longestAt == null) {
+                    longestAt = new int[length];
+                    valueAt = new int[length];
+                }
+                int start = i - keyLength[match] + 1;
+                if (keyLength[match] > longestAt[start]) {
+                    longestAt[start] = keyLength[match];
+                    valueAt[start] = match;
+                }
+                firstMatch = Math.min(firstMatch, start);
+                match = outputLink[match];
+            }
+        }
+
+        if (longestAt == null) {
+            return;
+        }
+
+        int i = firstMatch;
+        while (i < length) {
+            if (longestAt[i] > 0) {
+                handler.onMatch(i, i + longestAt[i], values[valueAt[i]]);
+                i += longestAt[i];
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private int next(int state, char ch) {
+        while (true) {
+            int index = Arrays.binarySearch(labels[state], ch);
+            if (index >= 0) {
+                return targets[state][index];
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = fail[state];
+        }
+    }
+
+    // Breadth-first so every fail link points to a state that is already resolved
+    private void buildFailLinks(int stateCount) {
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+
+        fail[ROOT] = ROOT;
+        outputLink[ROOT] = -1;
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            outputLink[child] = -1;
+            queue[tail++] = child;
+        }
+
+        while (head < tail) {
+            int state = queue[head++];
+            for (int i = 0; i < labels[state].length; i++) {
+                char ch = labels[state][i];
+                int child = targets[state][i];
+
+                int fallback = fail[state];
+                int index;
+                while ((index = Arrays.binarySearch(labels[fallback], ch)) < 0 && fallback != ROOT) {
+                    fallback = fail[fallback];
+                }
+                fail[child] = index >= 0 ? targets[fallback][index] : ROOT;
+                outputLink[child] = keyLength[fail[child]] > 0 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+}
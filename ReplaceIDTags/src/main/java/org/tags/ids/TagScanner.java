@@ -0,0 +1,112 @@
+package org.tags.ids;
+
+// Finds {{tag}}, {tag}} and {{tag} in one pass over a CharSequence, the same matches as the regex
+// \{\{([^}]+)\}\}|\{([^}]+)\}\}|\{\{([^}]+)\} but reported as offsets, so nothing is allocated per match.
+// Reusable like a Matcher: reset(text), then find() until it returns false.
+public final class TagScanner {
+
+    // Longest tag name accepted, not counting the curly brackets
+    public static final int MAX_TAG_LENGTH = 50;
+
+    private CharSequence text;
+    private int position;
+    // First '}' at or after closeFrom, -1 when there is none
+    private int close;
+    private int closeFrom;
+
+    private int start;
+    private int end;
+    private int nameStart;
+    private int nameEnd;
+    private boolean wellFormed;
+
+    public TagScanner reset(CharSequence text) {
+        this.text = text;
+        this.position = 0;
+        this.close = 0;
+        this.closeFrom = Integer.MAX_VALUE;
+        return this;
+    }
+
+    public boolean find() {
+        int length = text.length();
+        for (int i = position; i < length - 2; i++) {
+            if (text.charAt(i) != '{') {
+                continue;
+            }
+
+            int k = firstClose(i + 1);
+            if (k < 0) {
+                // Every form needs a closing bracket
+                break;
+            }
+            boolean doubleOpen = text.charAt(i + 1) == '{';
+            boolean doubleClose = k + 1 < length && text.charAt(k + 1) == '}';
+
+            if (doubleOpen && k > i + 2 && doubleClose) {
+                return match(i, k + 2, i + 2, k, true); // {{tag}}
+            }
+            if (k > i + 1 && doubleClose) {
+                return match(i, k + 2, i + 1, k, false); // {tag}}
+            }
+            if (doubleOpen && k > i + 2) {
+                return match(i, k + 1, i + 2, k, false); // {{tag}
+            }
+        }
+        position = length;
+        return false;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    public int end() {
+        return end;
+    }
+
+    public int nameStart() {
+        return nameStart;
+    }
+
+    public int nameEnd() {
+        return nameEnd;
+    }
+
+    // True for {{tag}}, false for the tolerated {tag}} and {{tag}
+    public boolean isWellFormed() {
+        return wellFormed;
+    }
+
+    // Same rule as before: the match minus four brackets must not exceed MAX_TAG_LENGTH
+    public boolean isTooLong() {
+        return end - start - 4 > MAX_TAG_LENGTH;
+    }
+
+    private boolean match(int start, int end, int nameStart, int nameEnd, boolean wellFormed) {
+        this.start = start;
+        this.end = end;
+        this.nameStart = nameStart;
+        this.nameEnd = nameEnd;
+        this.wellFormed = wellFormed;
+        this.position = end;
+        return true;
+    }
+
+    // The tag body cannot contain '}', so the first one after the opening bracket decides every form;
+    // it stays valid until the scan moves past it, which keeps the whole scan linear
+    private int firstClose(int from) {
+        if (from >= closeFrom && (close < 0 || close >= from)) {
+            return close;
+        }
+        close = -1;
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == '}') {
+                close = i;
+                break;
+            }
+        }
+        closeFrom = from;
+        return close;
+    }
+}
@@ -0,0 +1,46 @@
+package org.tags.ids;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// Also accepts the malformed {tag}} and {{tag} forms: every form found by TagScanner is looked up by its name,
+// so a JSON key "{{Customer.FirstName}}" replaces "{{Customer.FirstName}}", "{Customer.FirstName}}" and "{{Customer.FirstName}".
+final class TolerantTagMatcher implements TagMatcher {
+
+    private final Map<String, String> valuesByName = new HashMap<>();
+    private final TagScanner scanner = new TagScanner();
+
+    TolerantTagMatcher(JsonNode rootNode) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = rootNode.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            valuesByName.putIfAbsent(tagName(entry.getKey()), entry.getValue().asText());
+        }
+    }
+
+    @Override
+    public void findTags(CharSequence text, MatchHandler handler) {
+        scanner.reset(text);
+        while (scanner.find()) {
+            String value = valuesByName.get(text.subSequence(scanner.nameStart(), scanner.nameEnd()).toString());
+            if (value != null) {
+                handler.onMatch(scanner.start(), scanner.end(), value);
+            }
+        }
+    }
+
+    // "{{tag}}" -> "tag"
+    static String tagName(String key) {
+        int start = 0;
+        int end = key.length();
+        while (start < end && key.charAt(start) == '{') {
+            start++;
+        }
+        while (end > start && key.charAt(end - 1) == '}') {
+            end--;
+        }
+        return key.substring(start, end);
+    }
+}
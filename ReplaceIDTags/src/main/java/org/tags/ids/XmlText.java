@@ -0,0 +1,30 @@
+package org.tags.ids;
+
+// Text as XMLBeans writes it when POI saves a document: the characters XML 1.0 does not allow (controls other than
+// tab, line feed and carriage return, U+FFFE, U+FFFF and unpaired surrogates) become '?'. Values written without POI
+// go through sanitize, so they give the same text as the POI path and the part stays readable.
+final class XmlText {
+
+    private XmlText() {
+    }
+
+    static String sanitize(String text) {
+        char[] chars = null;
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (Character.isHighSurrogate(ch) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                i++;
+            } else if (!isXmlChar(ch)) {
+                if (chars == null) {
+                    chars = text.toCharArray();
+                }
+                chars[i] = '?';
+            }
+        }
+        return chars != null ? new String(chars) : text;
+    }
+
+    private static boolean isXmlChar(char ch) {
+        return ch == '\t' || ch == '\n' || ch == '\r' || (ch >= 0x20 && ch <= 0xD7FF) || (ch >= 0xE000 && ch <= 0xFFFD);
+    }
+}
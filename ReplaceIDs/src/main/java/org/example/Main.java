@@ -1,17 +1,18 @@
 package org.example;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.xwpf.usermodel.XWPFTable;
-import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
+import java.util.List;
 
 public class Main {
 
@@ -35,27 +36,28 @@ public class Main {
 
     private static String convertDocxToBase64(String filePath) throws Exception {
         File file = new File(filePath);
-        byte[] fileBytes = new byte[(int) file.length()];
 
-        try (FileInputStream fileInputStream = new FileInputStream(file)) {
-            fileInputStream.read(fileBytes);
+        // Encode while reading (a single read() may return only part of the file), into the exact base64 length
+        ByteArrayOutputStream base64Output = new ByteArrayOutputStream((int) ((file.length() + 2) / 3 * 4));
+        try (FileInputStream fileInputStream = new FileInputStream(file);
+             OutputStream encoder = Base64.getEncoder().wrap(base64Output)) {
+            fileInputStream.transferTo(encoder);
         }
 
-        return Base64.getEncoder().encodeToString(fileBytes);
+        return base64Output.toString(StandardCharsets.ISO_8859_1);
     }
 
     public static String replaceTagsInDocx(String base64Docx, String jsonInput) throws Exception {
         // Decode Base64
         byte[] docBytes = Base64.getDecoder().decode(base64Docx);
 
+        // Flattened ID -> value index, reused when the same questionnaire was rendered recently
+        QuestionnaireIndex index = QuestionnaireIndex.forJson(jsonInput);
+
         // load DOCX document
         try (XWPFDocument document = new XWPFDocument(new ByteArrayInputStream(docBytes))) {
-            // Parsing
-            ObjectMapper objectMapper = new ObjectMapper();
-            JsonNode rootNode = objectMapper.readTree(jsonInput);
-
             // Replace tags with values from JSON
-            replaceTagsInDocument(document, rootNode);
+            replaceTagsInDocument(document, index);
 
             // Write the modified document to a ByteArrayOutputStream
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
@@ -64,95 +66,41 @@ public class Main {
         }
     }
 
-    private static void replaceTagsInDocument(XWPFDocument document, JsonNode rootNode) {
-        // Replace tags in paragraphs
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            replaceTextInParagraph(paragraph, rootNode);
-        }
-
-        // Replace tags in tables
-        document.getTables().forEach(table -> {
-            for (int rowIndex = 0; rowIndex < table.getNumberOfRows(); rowIndex++) {
-                for (int cellIndex = 0; cellIndex < table.getRow(rowIndex).getTableCells().size(); cellIndex++) {
-                    XWPFTableCell cell = table.getRow(rowIndex).getCell(cellIndex);
-                    for (XWPFParagraph cellParagraph : cell.getParagraphs()) {
-                        replaceTextInParagraph(cellParagraph, rootNode);
-                    }
-                }
-            }
-        });
+    // Same result as replaceTagsInDocx, but the document is never loaded into an XWPFDocument
+    public static String replaceTagsInDocxStreaming(String base64Docx, String jsonInput) throws Exception {
+        byte[] docBytes = Base64.getDecoder().decode(base64Docx);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(docBytes.length);
+        replaceTagsInDocxStreaming(new ByteArrayInputStream(docBytes), outputStream, jsonInput);
+        return Base64.getEncoder().encodeToString(outputStream.toByteArray());
     }
 
-    private static void replaceTextInParagraph(XWPFParagraph paragraph, JsonNode rootNode) {
-        String text = paragraph.getText();
-        System.out.println("Paragraph/Text Cell Text: " + text); //print paragraph text for debugging
-
-        if (text != null) {
-            String newText = replaceTags(text, rootNode);
-            System.out.println("Original Text: " + text); // for debugging
-            System.out.println("New Text: " + newText); // for debugging
-
-            // Rmove all runs in the paragraph
-            int runCount = paragraph.getRuns().size();
-            for (int i = runCount - 1; i >= 0; i--) {
-                paragraph.removeRun(i);
-            }
-
-            // Create a new run with updated text
-            if (!newText.isEmpty()) {
-                paragraph.createRun().setText(newText);
-            } else {
-                System.out.println("No replacement occurred; newText is empty.");
-            }
-        }
+    public static void replaceTagsInDocxStreaming(InputStream docxInput, OutputStream docxOutput, String jsonInput) throws Exception {
+        StreamingDocxReplacer.replaceTags(docxInput, docxOutput, QuestionnaireIndex.forJson(jsonInput));
     }
 
-    private static String replaceTags(String text, JsonNode rootNode) {
-        //exploring JSON estructure
-        JsonNode questionGroups = rootNode.path("Questionnaire").path("QuestionGroup");
+    private static void replaceTagsInDocument(XWPFDocument document, TagMatcher matcher) {
+        // One pass over headers, body, tables (nested too), content controls and footers
+        BodyWalker.walk(document, paragraph -> replaceTextInParagraph(paragraph, matcher));
+    }
 
-        //Loop QuestionGroups
-        for (JsonNode questionGroup : questionGroups) {
-            String groupId = questionGroup.path("QuestionGroupID").asText();
-            String groupName = questionGroup.path("Name").asText();
+    // Rewrites only the text elements holding a tag (tags split across runs and w:t elements included); paragraphs
+    // without a tag are not touched
+    private static void replaceTextInParagraph(XWPFParagraph paragraph, TagMatcher matcher) {
+        List<CTText> elements = BodyWalker.textElements(paragraph);
+        String[] texts = new String[elements.size()];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = elements.get(i).getStringValue();
+        }
 
-            //Replace the QuestionGroupID tag
-            String groupTag = "{{" + groupId + "}}";
-            if (text.contains(groupTag)) {
-                System.out.println("Replacing: " + groupTag + " with " + groupName);
-                text = text.replace(groupTag, groupName);
-            }
+        String[] newTexts = SegmentRewriter.rewrite(texts, matcher);
+        if (newTexts == null) {
+            return;
+        }
 
-            // Loop Questions within the QuestionGroup
-            JsonNode questions = questionGroup.path("Question");
-            for (JsonNode question : questions) {
-                String questionId = question.path("QuestionID").asText();
-                String questionName = question.path("Name").asText();
-
-                //replace the QuestionID tag
-                String questionTag = "{{" + questionId + "}}";
-                if (text.contains(questionTag)) {
-                    System.out.println("Replacing: " + questionTag + " with " + questionName);
-                    text = text.replace(questionTag, questionName);
-                }
-
-                // Process answers for replacements
-                JsonNode answers = question.path("Answer");
-                for (JsonNode answer : answers) {
-                    String answerID = answer.path("AnswerID").asText(); // Get AnswerID
-                    String answerName = answer.path("Name").asText(); // Get Name
-
-                    // replace answer tags
-                    String answerTag = "{{" + answerID + "}}";
-                    if (text.contains(answerTag)) {
-                        System.out.println("Replacing: " + answerTag + " with " + answerName);
-                        text = text.replace(answerTag, answerName);
-                    } else {
-                        System.out.println("Tag " + answerTag + " not found in text.");
-                    }
-                }
+        for (int i = 0; i < texts.length; i++) {
+            if (!newTexts[i].equals(texts[i])) {
+                BodyWalker.setText(elements.get(i), newTexts[i]);
             }
         }
-        return text;
     }
 }
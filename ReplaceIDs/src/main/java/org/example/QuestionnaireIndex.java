@@ -0,0 +1,113 @@
+package org.example;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Questionnaire JSON flattened once into ID -> value, so each paragraph is scanned once for {{...}}
+// and every tag is a single hash lookup instead of a walk over the whole QuestionGroup/Question/Answer tree.
+final class QuestionnaireIndex implements TagMatcher {
+
+    // Warm containers render the same questionnaire into many templates, keep the last few indexes around
+    private static final int CACHE_SIZE = 16;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final Map<String, QuestionnaireIndex> CACHE = new LinkedHashMap<String, QuestionnaireIndex>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, QuestionnaireIndex> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private final Map<String, String> valuesById;
+
+    private QuestionnaireIndex(Map<String, String> valuesById) {
+        this.valuesById = valuesById;
+    }
+
+    // Look the JSON up by its SHA-256 and only parse and flatten it on a miss
+    static QuestionnaireIndex forJson(String jsonInput) throws IOException {
+        String key = sha256(jsonInput);
+        synchronized (CACHE) {
+            QuestionnaireIndex cached = CACHE.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        QuestionnaireIndex index = flatten(OBJECT_MAPPER.readTree(jsonInput));
+        synchronized (CACHE) {
+            CACHE.put(key, index);
+        }
+        return index;
+    }
+
+    static QuestionnaireIndex flatten(JsonNode rootNode) {
+        Map<String, String> valuesById = new HashMap<>();
+        JsonNode questionGroups = rootNode.path("Questionnaire").path("QuestionGroup");
+
+        // Same precedence as the old replace order: group, its questions, then their answers; first ID wins
+        for (JsonNode questionGroup : questionGroups) {
+            put(valuesById, questionGroup.path("QuestionGroupID").asText(), questionGroup.path("Name").asText());
+
+            for (JsonNode question : questionGroup.path("Question")) {
+                put(valuesById, question.path("QuestionID").asText(), question.path("Name").asText());
+
+                for (JsonNode answer : question.path("Answer")) {
+                    put(valuesById, answer.path("AnswerID").asText(), answer.path("Name").asText());
+                }
+            }
+        }
+        return new QuestionnaireIndex(valuesById);
+    }
+
+    // Every {{ID}} in one pass, each one a single hash lookup
+    @Override
+    public void findTags(CharSequence text, MatchHandler handler) {
+        String string = text.toString();
+        int open = string.indexOf("{{");
+
+        while (open >= 0) {
+            int close = string.indexOf("}}", open + 2);
+            if (close < 0) {
+                break;
+            }
+            // Use the innermost opening, for example "{{{{A01}}"
+            open = string.lastIndexOf("{{", close - 2);
+
+            String value = valuesById.get(string.substring(open + 2, close));
+            if (value != null) {
+                handler.onMatch(open, close + 2, value);
+            }
+            open = string.indexOf("{{", close + 2);
+        }
+    }
+
+    private static void put(Map<String, String> valuesById, String id, String value) {
+        // Nodes without an ID would otherwise turn every "{{}}" into their name
+        if (!id.isEmpty()) {
+            valuesById.putIfAbsent(id, value);
+        }
+    }
+
+    private static String sha256(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
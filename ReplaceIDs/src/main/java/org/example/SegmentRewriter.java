@@ -0,0 +1,61 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Applies tag replacements to a paragraph whose text is split over several segments (runs, or w:t elements).
+// Only the segments a tag touches are rewritten: the value goes into the segment holding the start of the tag,
+// the rest of a tag split across segments is cut out of the following ones, everything else keeps its text.
+final class SegmentRewriter {
+
+    private SegmentRewriter() {
+    }
+
+    // Returns null when no tag matched, so untouched paragraphs can be left completely alone
+    static String[] rewrite(String[] segments, TagMatcher matcher) {
+        int[] ends = new int[segments.length];
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            text.append(segments[i]);
+            ends[i] = text.length();
+        }
+
+        List<int[]> matches = new ArrayList<>();
+        List<String> values = new ArrayList<>();
+        matcher.findTags(text, (start, end, value) -> {
+            matches.add(new int[]{start, end});
+            values.add(value);
+        });
+        if (matches.isEmpty()) {
+            return null;
+        }
+
+        String[] rewritten = segments.clone();
+        int m = 0;
+        for (int i = 0; i < segments.length; i++) {
+            int segmentStart = i == 0 ? 0 : ends[i - 1];
+            int segmentEnd = ends[i];
+
+            // Skip tags that ended before this segment
+            while (m < matches.size() && matches.get(m)[1] <= segmentStart) {
+                m++;
+            }
+            if (m == matches.size() || matches.get(m)[0] >= segmentEnd || segmentStart == segmentEnd) {
+                continue;
+            }
+
+            StringBuilder segment = new StringBuilder();
+            int position = segmentStart;
+            for (int k = m; k < matches.size() && matches.get(k)[0] < segmentEnd; k++) {
+                int[] match = matches.get(k);
+                if (match[0] >= segmentStart) {
+                    segment.append(text, position, match[0]).append(values.get(k));
+                }
+                position = Math.min(match[1], segmentEnd);
+            }
+            segment.append(text, position, segmentEnd);
+            rewritten[i] = segment.toString();
+        }
+        return rewritten;
+    }
+}
@@ -13,6 +13,8 @@ import java.util.Base64;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 public class Main implements RequestHandler<Map<String, String>, String> {
 
@@ -23,53 +25,20 @@ public class Main implements RequestHandler<Map<String, String>, String> {
             String fieldsAndTags = input.get("fieldsAndTags");
             String base64Docx = input.get("base64Docx");
 
+            // Optional: template and/or result by reference (store://key, or a path or file: URI inside the document store) instead of inline base64
+            String documentRef = input.get(DocumentStore.DOCUMENT_REF);
+            String outputRef = input.get(DocumentStore.OUTPUT_REF);
+            if (documentRef != null || outputRef != null) {
+                return addSupportingRowsByReference(base64Docx, documentRef, outputRef, fieldsAndTags);
+            }
+
             // Decode docx
             byte[] decodedDocx = Base64.getDecoder().decode(base64Docx);
             ByteArrayInputStream docxInputStream = new ByteArrayInputStream(decodedDocx);
-            XWPFDocument docx = new XWPFDocument(docxInputStream);
-
-            // Process pairs
-            List<String> rows = new ArrayList<>();
-            String[] elements = fieldsAndTags.split(",");
-            for (String element : elements) {
-                String[] parts = element.split("/");
-                if (parts.length == 2) {
-                    String caseField = parts[0];
-                    String placeholder = parts[1];
-                    rows.add(caseField + "," + placeholder);
-                }
-            }
-
-            // Get table
-            XWPFTable table = docx.getTables().get(0);
-
-            // Delete first row
-            if (table.getRows().size() > 0) {
-                table.removeRow(1);
-            }
-
-            // Loop and insert them into the table (including duplicates)
-            for (String row : rows) {
-                String[] fields = row.split(",");
-                String caseField = fields[0];
-                String placeholder = fields[1];
-
-                // Create a new row in the table
-                XWPFTableRow tableRow = table.createRow();
-                XWPFTableCell cell1 = tableRow.getCell(0);
-                XWPFTableCell cell2 = tableRow.getCell(1);
-
-                // Set values in correct columns
-                cell1.setText(caseField);
-                cell2.setText(placeholder);
-            }
-
-            // Remove duplicate rows in the table
-            removeDuplicateRows(table);
 
             // Updated DOCX output stream
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            docx.write(outputStream);
+            addSupportingRows(docxInputStream, fieldsAndTags, outputStream);
 
             // Updated DOCX to Base64
             byte[] modifiedDocxBytes = outputStream.toByteArray();
@@ -84,6 +53,63 @@ public class Main implements RequestHandler<Map<String, String>, String> {
         }
     }
 
+    // Returns outputRef, or the base64 result when there is none
+    private String addSupportingRowsByReference(String base64Docx, String documentRef, String outputRef, String fieldsAndTags) throws IOException {
+        ByteArrayOutputStream outputStream = outputRef == null ? new ByteArrayOutputStream() : null;
+        try (InputStream docxInputStream = documentRef != null ? DocumentStore.open(documentRef)
+                : new ByteArrayInputStream(Base64.getDecoder().decode(base64Docx));
+             DocumentStore.Output docxOutputStream = outputRef != null ? DocumentStore.create(outputRef) : DocumentStore.wrap(outputStream)) {
+            addSupportingRows(docxInputStream, fieldsAndTags, docxOutputStream.stream());
+            docxOutputStream.commit();
+        }
+        return outputRef != null ? outputRef : Base64.getEncoder().encodeToString(outputStream.toByteArray());
+    }
+
+    void addSupportingRows(InputStream docxInputStream, String fieldsAndTags, OutputStream outputStream) throws IOException {
+        XWPFDocument docx = new XWPFDocument(docxInputStream);
+
+        // Process pairs
+        List<String> rows = new ArrayList<>();
+        String[] elements = fieldsAndTags.split(",");
+        for (String element : elements) {
+            String[] parts = element.split("/");
+            if (parts.length == 2) {
+                String caseField = parts[0];
+                String placeholder = parts[1];
+                rows.add(caseField + "," + placeholder);
+            }
+        }
+
+        // Get table
+        XWPFTable table = docx.getTables().get(0);
+
+        // Delete first row
+        if (table.getRows().size() > 0) {
+            table.removeRow(1);
+        }
+
+        // Loop and insert them into the table (including duplicates)
+        for (String row : rows) {
+            String[] fields = row.split(",");
+            String caseField = fields[0];
+            String placeholder = fields[1];
+
+            // Create a new row in the table
+            XWPFTableRow tableRow = table.createRow();
+            XWPFTableCell cell1 = tableRow.getCell(0);
+            XWPFTableCell cell2 = tableRow.getCell(1);
+
+            // Set values in correct columns
+            cell1.setText(caseField);
+            cell2.setText(placeholder);
+        }
+
+        // Remove duplicate rows in the table
+        removeDuplicateRows(table);
+
+        docx.write(outputStream);
+    }
+
     // Function to remove duplicate rows based on their text content
     private void removeDuplicateRows(XWPFTable table) {
         Set<String> seen = new HashSet<>();
@@ -116,3 +142,4 @@ public class Main implements RequestHandler<Map<String, String>, String> {
         }
         return rowText.toString();
     }
+}
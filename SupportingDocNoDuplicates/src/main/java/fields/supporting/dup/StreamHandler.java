@@ -0,0 +1,54 @@
+package fields.supporting.dup;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Same request and response as Main, but the base64 document is decoded from the request stream and the result
+// is encoded into the response stream, so neither the base64 text nor the decoded bytes are held on the heap.
+// documentRef and outputRef work as in Main.
+public class StreamHandler implements RequestStreamHandler {
+
+    private final Main main = new Main();
+
+    @Override
+    public void handleRequest(InputStream input, OutputStream output, Context context) throws IOException {
+        Path result = Files.createTempFile("result", ".docx");
+        try {
+            String outputRef;
+            try (StreamingRequest request = StreamingRequest.read(input, "base64Docx")) {
+                outputRef = request.get(DocumentStore.OUTPUT_REF);
+                if (request.document() == null) {
+                    throw new IOException("base64Docx or documentRef is missing");
+                }
+
+                try (InputStream docxInput = new BufferedInputStream(Files.newInputStream(request.document()), 64 * 1024);
+                     DocumentStore.Output docxOutput = outputRef != null ? DocumentStore.create(outputRef)
+                             : DocumentStore.wrap(new BufferedOutputStream(Files.newOutputStream(result), 64 * 1024))) {
+                    main.addSupportingRows(docxInput, request.get("fieldsAndTags"), docxOutput.stream());
+                    docxOutput.commit();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                StreamingRequest.writeString(output, "Error processing DOCX file: " + e.getMessage());
+                return;
+            }
+
+            if (outputRef != null) {
+                // The document was written to the reference, only the reference goes back
+                StreamingRequest.writeString(output, outputRef);
+            } else {
+                StreamingRequest.writeBase64(output, result);
+            }
+        } finally {
+            Files.deleteIfExists(result);
+        }
+    }
+}